@@ -0,0 +1,32 @@
+package com.wenhui.coroutines.benchmarks
+
+import com.wenhui.coroutines.Configuration
+import com.wenhui.coroutines.configCoroutinesAdapter
+import kotlinx.coroutines.experimental.asCoroutineDispatcher
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+
+/**
+ * The executor shared by the library and the baselines, so all of them run on the same threads
+ */
+internal object BenchmarkExecutors {
+
+    private val THREADS = Math.max(2, Math.min(Runtime.getRuntime().availableProcessors() - 1, 6))
+
+    val executor: ScheduledExecutorService = Executors.newScheduledThreadPool(THREADS)
+    val dispatcher = executor.asCoroutineDispatcher()
+
+    init {
+        configCoroutinesAdapter(Configuration.Builder().executor(executor).build())
+    }
+
+    /**
+     * Spin until [condition] is true, the benchmarks wait for the background threads this way, so the benchmark
+     * thread doesn't park and add its wake up time to the results
+     */
+    inline fun awaitUntil(condition: () -> Boolean) {
+        while (!condition()) {
+            Thread.yield()
+        }
+    }
+}
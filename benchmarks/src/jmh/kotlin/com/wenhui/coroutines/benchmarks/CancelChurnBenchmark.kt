@@ -0,0 +1,58 @@
+package com.wenhui.coroutines.benchmarks
+
+import com.wenhui.coroutines.WorkManager
+import com.wenhui.coroutines.from
+import kotlinx.coroutines.experimental.Job
+import kotlinx.coroutines.experimental.delay
+import kotlinx.coroutines.experimental.launch
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.Callable
+import java.util.concurrent.TimeUnit
+
+// Long enough that no work runs before it is cancelled
+private const val START_DELAY = 10_000L
+
+/**
+ * Cost of starting [jobs] works, registering them to a manager and cancelling them all, e.g. leaving a screen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class CancelChurnBenchmark {
+
+    @Param("10", "1000")
+    var jobs = 0
+
+    private val executor = BenchmarkExecutors.executor
+    private val dispatcher = BenchmarkExecutors.dispatcher
+
+    @Benchmark
+    fun adapter() {
+        val manager = WorkManager()
+        repeat(jobs) {
+            from { 1 }.setStartDelay(START_DELAY).start().manageBy(manager)
+        }
+        manager.cancelAllWorks()
+    }
+
+    @Benchmark
+    fun coroutines() {
+        val parent = Job()
+        repeat(jobs) {
+            launch(dispatcher, parent = parent) { delay(START_DELAY) }
+        }
+        parent.cancel()
+    }
+
+    @Benchmark
+    fun executorService() {
+        val futures = List(jobs) { executor.schedule(Callable { 1 }, START_DELAY, TimeUnit.MILLISECONDS) }
+        futures.forEach { it.cancel(false) }
+    }
+}
@@ -0,0 +1,63 @@
+package com.wenhui.coroutines.benchmarks
+
+import com.wenhui.coroutines.merge
+import kotlinx.coroutines.experimental.async
+import kotlinx.coroutines.experimental.launch
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.Callable
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Cost of running [width] actions in parallel and merging their results
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class FanOutBenchmark {
+
+    @Param("2", "8", "32")
+    var width = 0
+
+    private val executor = BenchmarkExecutors.executor
+    private val dispatcher = BenchmarkExecutors.dispatcher
+
+    private lateinit var actions: List<() -> Int?>
+    private lateinit var callables: List<Callable<Int>>
+
+    @Setup
+    fun setup() {
+        actions = List(width) { index -> { index } }
+        callables = List(width) { index -> Callable { index } }
+    }
+
+    @Benchmark
+    fun adapter() {
+        val done = AtomicBoolean()
+        merge(actions).consume { done.set(true) }.start()
+        BenchmarkExecutors.awaitUntil { done.get() }
+    }
+
+    @Benchmark
+    fun coroutines() {
+        val done = AtomicBoolean()
+        launch(dispatcher) {
+            val results = actions.map { async(dispatcher) { it() } }
+            results.forEach { it.await() }
+            done.set(true)
+        }
+        BenchmarkExecutors.awaitUntil { done.get() }
+    }
+
+    @Benchmark
+    fun executorService() {
+        executor.invokeAll(callables).forEach { it.get() }
+    }
+}
@@ -0,0 +1,95 @@
+package com.wenhui.coroutines.benchmarks
+
+import com.wenhui.coroutines.consumeByPool
+import com.wenhui.coroutines.from
+import com.wenhui.coroutines.fromMappedFile
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Time to count the records of a CSV file of [fileSizeMb], the throughput is the file size divided by the time.
+ * Run a multi-GB file with "-PjmhInclude=MappedFile" and "-p fileSizeMb=4096" given to JMH
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+open class MappedFileBenchmark {
+
+    @Param("256")
+    var fileSizeMb = 0
+
+    private val records = AtomicLong()
+    private lateinit var file: Path
+
+    @Setup
+    fun setup() {
+        // configure the library with the shared executor before the first work
+        BenchmarkExecutors.executor
+        file = Files.createTempFile("benchmark", ".csv")
+        val record = "1234567,some name,2018-04-01T12:00:00,42.5,another column of text\n".toByteArray()
+        Files.newOutputStream(file).buffered(1 shl 16).use { output ->
+            repeat((fileSizeMb.toLong() * 1024 * 1024 / record.size).toInt()) { output.write(record) }
+        }
+    }
+
+    @TearDown
+    fun tearDown() {
+        Files.delete(file)
+    }
+
+    /**
+     * The baseline, reading the lines on the benchmark thread
+     */
+    @Benchmark
+    fun bufferedReader(): Long {
+        var count = 0L
+        Files.newBufferedReader(file).use { reader ->
+            while (reader.readLine() != null) count++
+        }
+        return count
+    }
+
+    /**
+     * Each line decoded into the heap, and consumed by a pool
+     */
+    @Benchmark
+    fun adapterLines(): Long {
+        records.set(0)
+        val worker = from(file, consumeByPool<String, Unit> { records.incrementAndGet() })
+        BenchmarkExecutors.awaitUntil { worker.isCompleted }
+        return records.get()
+    }
+
+    /**
+     * Mapped regions consumed by a pool, the records are counted in place
+     */
+    @Benchmark
+    fun adapterMappedFile(): Long {
+        records.set(0)
+        val worker = fromMappedFile(file, consumeByPool<ByteBuffer, Unit> { region ->
+            var count = 0L
+            for (i in region.position() until region.limit()) {
+                if (region.get(i) == NEW_LINE) count++
+            }
+            records.addAndGet(count)
+        })
+        BenchmarkExecutors.awaitUntil { worker.isCompleted }
+        return records.get()
+    }
+
+    private companion object {
+        const val NEW_LINE = '\n'.toByte()
+    }
+}
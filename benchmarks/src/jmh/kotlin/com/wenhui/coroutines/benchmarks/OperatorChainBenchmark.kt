@@ -0,0 +1,65 @@
+package com.wenhui.coroutines.benchmarks
+
+import com.wenhui.coroutines.Work
+import com.wenhui.coroutines.Worker
+import com.wenhui.coroutines.from
+import kotlinx.coroutines.experimental.launch
+import kotlinx.coroutines.experimental.withContext
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Cost of the operator stages, a work with [depth] transforms
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class OperatorChainBenchmark {
+
+    @Param("1", "4", "16")
+    var depth = 0
+
+    private val executor = BenchmarkExecutors.executor
+    private val dispatcher = BenchmarkExecutors.dispatcher
+
+    @Benchmark
+    fun adapter() {
+        val done = AtomicBoolean()
+        var work: Work<Int, Worker> = from { 0 }
+        repeat(depth) { work = work.transform { it + 1 } }
+        work.consume { done.set(true) }.start()
+        BenchmarkExecutors.awaitUntil { done.get() }
+    }
+
+    @Benchmark
+    fun coroutines() {
+        val done = AtomicBoolean()
+        launch(dispatcher) {
+            var value = 0
+            repeat(depth) { value = withContext(dispatcher) { value + 1 } }
+            done.set(true)
+        }
+        BenchmarkExecutors.awaitUntil { done.get() }
+    }
+
+    @Benchmark
+    fun executorService() {
+        val done = AtomicBoolean()
+        // Each stage is a task of its own, the same as a chain of callbacks
+        hop(depth, 0, done)
+        BenchmarkExecutors.awaitUntil { done.get() }
+    }
+
+    private fun hop(remaining: Int, value: Int, done: AtomicBoolean) {
+        executor.execute {
+            if (remaining == 0) done.set(true) else hop(remaining - 1, value + 1, done)
+        }
+    }
+}
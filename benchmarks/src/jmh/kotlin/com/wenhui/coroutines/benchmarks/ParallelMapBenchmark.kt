@@ -0,0 +1,52 @@
+package com.wenhui.coroutines.benchmarks
+
+import com.wenhui.coroutines.parallelMap
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/**
+ * Cost of [parallelMap] compared to a sequential map, over [size] items of [iterations] iterations each, from cheap
+ * items that should stay sequential to expensive ones worth the background pool
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class ParallelMapBenchmark {
+
+    @Param("10", "100", "1000", "10000", "100000")
+    var size = 0
+
+    @Param("10", "1000")
+    var iterations = 0
+
+    private lateinit var list: List<Int>
+    private lateinit var transform: (Int) -> Int
+
+    @Setup
+    fun setup() {
+        list = (0 until size).toList()
+        val iterations = iterations
+        transform = { spin(it, iterations) }
+    }
+
+    @Benchmark
+    fun sequential(): List<Int> = list.map(transform)
+
+    @Benchmark
+    fun parallel(): List<Int> = parallelMap(list, transform).get()
+
+    private fun spin(seed: Int, iterations: Int): Int {
+        var hash = seed
+        for (i in 0 until iterations) {
+            hash = hash * 31 + i
+        }
+        return hash
+    }
+}
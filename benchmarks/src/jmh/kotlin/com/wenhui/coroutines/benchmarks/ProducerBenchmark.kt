@@ -0,0 +1,96 @@
+package com.wenhui.coroutines.benchmarks
+
+import com.wenhui.coroutines.Producer
+import com.wenhui.coroutines.consumeBy
+import com.wenhui.coroutines.consumeByPool
+import kotlinx.coroutines.experimental.channels.Channel
+import kotlinx.coroutines.experimental.launch
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OperationsPerInvocation
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+private const val ELEMENTS = 1000
+
+/**
+ * Throughput of producing elements to a consumer, or to a pool of consumers
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@OperationsPerInvocation(ELEMENTS)
+open class ProducerBenchmark {
+
+    private val executor = BenchmarkExecutors.executor
+    private val dispatcher = BenchmarkExecutors.dispatcher
+    private val consumed = AtomicLong()
+
+    private lateinit var producer: Producer<Int>
+    private lateinit var poolProducer: Producer<Int>
+    private lateinit var channel: Channel<Int>
+    private val elements = (0 until ELEMENTS).toList()
+
+    @Setup
+    fun setup() {
+        producer = consumeBy { element: Int -> element }.start()
+        poolProducer = consumeByPool { _: Int -> consumed.incrementAndGet() }.start()
+        channel = Channel(Channel.UNLIMITED)
+        repeat(Math.max(2, Math.min(Runtime.getRuntime().availableProcessors() - 1, 6))) {
+            launch(dispatcher) {
+                for (element in channel) consumed.incrementAndGet()
+            }
+        }
+    }
+
+    @TearDown
+    fun tearDown() {
+        producer.close()
+        poolProducer.close()
+        channel.close()
+    }
+
+    /**
+     * consumeBy only consumes the last element, so wait until every element is either consumed or dropped
+     */
+    @Benchmark
+    fun adapterConsumeBy() {
+        val target = producer.metrics().let { it.consumedCount + it.droppedCount } + ELEMENTS
+        repeat(ELEMENTS) { producer.produce(it) }
+        BenchmarkExecutors.awaitUntil { producer.metrics().let { it.consumedCount + it.droppedCount } >= target }
+    }
+
+    @Benchmark
+    fun adapterConsumeByPool() {
+        val target = consumed.get() + ELEMENTS
+        repeat(ELEMENTS) { poolProducer.produce(it) }
+        BenchmarkExecutors.awaitUntil { consumed.get() >= target }
+    }
+
+    @Benchmark
+    fun adapterConsumeByPoolProduceAll() {
+        val target = consumed.get() + ELEMENTS
+        poolProducer.produceAll(elements)
+        BenchmarkExecutors.awaitUntil { consumed.get() >= target }
+    }
+
+    @Benchmark
+    fun coroutinesChannel() {
+        val target = consumed.get() + ELEMENTS
+        repeat(ELEMENTS) { channel.offer(it) }
+        BenchmarkExecutors.awaitUntil { consumed.get() >= target }
+    }
+
+    @Benchmark
+    fun executorService() {
+        val target = consumed.get() + ELEMENTS
+        repeat(ELEMENTS) { executor.execute { consumed.incrementAndGet() } }
+        BenchmarkExecutors.awaitUntil { consumed.get() >= target }
+    }
+}
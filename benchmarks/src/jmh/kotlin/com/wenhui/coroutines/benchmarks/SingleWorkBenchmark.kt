@@ -0,0 +1,45 @@
+package com.wenhui.coroutines.benchmarks
+
+import com.wenhui.coroutines.from
+import kotlinx.coroutines.experimental.launch
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Latency of a single background work, from start until it ran
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class SingleWorkBenchmark {
+
+    private val executor = BenchmarkExecutors.executor
+    private val dispatcher = BenchmarkExecutors.dispatcher
+
+    @Benchmark
+    fun adapter() {
+        val done = AtomicBoolean()
+        from { 1 }.consume { done.set(true) }.start()
+        BenchmarkExecutors.awaitUntil { done.get() }
+    }
+
+    @Benchmark
+    fun coroutines() {
+        val done = AtomicBoolean()
+        launch(dispatcher) { done.set(true) }
+        BenchmarkExecutors.awaitUntil { done.get() }
+    }
+
+    @Benchmark
+    fun executorService() {
+        val done = AtomicBoolean()
+        executor.execute { done.set(true) }
+        BenchmarkExecutors.awaitUntil { done.get() }
+    }
+}
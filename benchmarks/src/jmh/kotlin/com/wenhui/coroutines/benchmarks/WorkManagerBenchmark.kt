@@ -0,0 +1,78 @@
+@file:Suppress("INVISIBLE_MEMBER", "INVISIBLE_REFERENCE")
+
+package com.wenhui.coroutines.benchmarks
+
+import com.wenhui.coroutines.WorkManager
+import kotlinx.coroutines.experimental.Job
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
+
+/**
+ * Cost of registering [jobs] jobs to a [WorkManager], then completing them one by one or cancelling them all. The
+ * jobs are registered directly, without starting a work, so only the manager is measured
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class WorkManagerBenchmark {
+
+    @Param("10", "1000", "100000")
+    var jobs = 0
+
+    @Benchmark
+    fun registerAndComplete() {
+        val manager = WorkManager()
+        val jobList = List(jobs) { Job() }
+        jobList.forEach { manager.manageJob(it) }
+        jobList.forEach { it.cancel() }
+    }
+
+    @Benchmark
+    fun registerAndCancelAll() {
+        val manager = WorkManager()
+        val jobList = List(jobs) { Job() }
+        jobList.forEach { manager.manageJob(it) }
+        manager.cancelAllWorks()
+    }
+}
+
+/**
+ * The copy on write list the [WorkManager] used to keep its jobs in, as a baseline of [WorkManagerBenchmark]. It is
+ * quadratic, so it stops at 10k jobs, 100k would take seconds per operation
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class CopyOnWriteRegistryBenchmark {
+
+    @Param("10", "1000", "10000")
+    var jobs = 0
+
+    @Benchmark
+    fun registerAndComplete() {
+        val activeJobs = CopyOnWriteArrayList<Job>()
+        val jobList = List(jobs) { Job() }
+        jobList.forEach { register(activeJobs, it) }
+        jobList.forEach { it.cancel() }
+    }
+
+    @Benchmark
+    fun registerAndCancelAll() {
+        val activeJobs = CopyOnWriteArrayList<Job>()
+        val jobList = List(jobs) { Job() }
+        jobList.forEach { register(activeJobs, it) }
+        activeJobs.forEach { it.cancel() }
+    }
+
+    private fun register(activeJobs: MutableList<Job>, job: Job) {
+        job.invokeOnCompletion { activeJobs.remove(job) }
+        activeJobs.add(job)
+    }
+}
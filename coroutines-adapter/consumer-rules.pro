@@ -0,0 +1,4 @@
+# The core library looks up the Android platform by name
+-keep class com.wenhui.coroutines.AndroidPlatform {
+    <init>();
+}
@@ -0,0 +1,27 @@
+package com.wenhui.coroutines
+
+import android.os.Process
+import android.util.Log
+import kotlinx.coroutines.experimental.CoroutineDispatcher
+import kotlinx.coroutines.experimental.android.UI
+
+private const val DEBUG_TAG = "CoroutinesAdapter"
+
+/**
+ * The Android main thread as [CoroutineContexts.UI], and background threads in the background priority. It is found
+ * by name from the core library, so it must keep its name and no-arg constructor
+ */
+internal class AndroidPlatform : Platform {
+
+    override val mainDispatcher: CoroutineDispatcher = UI
+
+    override fun onBackgroundThreadStart() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND)
+    }
+
+    override val isLogEnabled: Boolean get() = BuildConfig.DEBUG
+
+    override fun log(message: String) {
+        Log.d(DEBUG_TAG, "[${Thread.currentThread().name}] $message")
+    }
+}
@@ -0,0 +1,90 @@
+package com.wenhui.coroutines
+
+import org.assertj.core.api.Java6Assertions.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+
+@RunWith(RobolectricTestRunner::class)
+@Config(constants = BuildConfig::class)
+class BulkheadTest {
+
+    @Test
+    fun testMaxConcurrency() {
+        val bulkhead = Bulkhead("test", 1, 10)
+        val running = AtomicInteger()
+        val maxRunning = AtomicInteger()
+        val doneSignal = CountDownLatch(3)
+
+        repeat(3) {
+            from {
+                maxRunning.set(Math.max(maxRunning.get(), running.incrementAndGet()))
+                Thread.sleep(50)
+                running.decrementAndGet()
+                doneSignal.countDown()
+            }.setBulkhead(bulkhead).start()
+        }
+
+        assertThat(doneSignal.await(1, TimeUnit.SECONDS)).isTrue()
+        assertThat(maxRunning.get()).isEqualTo(1)
+        Thread.sleep(50)
+        assertThat(bulkhead.activeCount).isEqualTo(0)
+        assertThat(bulkhead.queuedCount).isEqualTo(0)
+    }
+
+    @Test
+    fun testQueueOverflow() {
+        val bulkhead = Bulkhead("test", 1, 1)
+        val release = CountDownLatch(1)
+        val started = CountDownLatch(1)
+        val error = AtomicReference<Throwable>()
+
+        from {
+            started.countDown()
+            release.await(1, TimeUnit.SECONDS)
+        }.setBulkhead(bulkhead).start()
+        assertThat(started.await(1, TimeUnit.SECONDS)).isTrue()
+
+        from { 1 }.setBulkhead(bulkhead).start()
+        Thread.sleep(50)
+        assertThat(bulkhead.queuedCount).isEqualTo(1)
+
+        from { 2 }.onError { error.set(it) }.setBulkhead(bulkhead).start()
+        Thread.sleep(50)
+        Robolectric.flushForegroundThreadScheduler()
+        release.countDown()
+
+        assertThat(error.get()).isInstanceOf(BulkheadFullException::class.java)
+    }
+
+    @Test
+    fun testCancelWaitingWork() {
+        val bulkhead = Bulkhead("test", 1, 1)
+        val release = CountDownLatch(1)
+        val started = CountDownLatch(1)
+        val doneSignal = CountDownLatch(1)
+
+        from {
+            started.countDown()
+            release.await(1, TimeUnit.SECONDS)
+        }.setBulkhead(bulkhead).start()
+        assertThat(started.await(1, TimeUnit.SECONDS)).isTrue()
+
+        val waiting = from { 1 }.setBulkhead(bulkhead).start()
+        Thread.sleep(50)
+        waiting.cancel()
+        Thread.sleep(50)
+        assertThat(bulkhead.queuedCount).isEqualTo(0)
+
+        // The slot is handed to the next work after the cancelled one
+        from { doneSignal.countDown() }.setBulkhead(bulkhead).start()
+        release.countDown()
+        assertThat(doneSignal.await(1, TimeUnit.SECONDS)).isTrue()
+    }
+}
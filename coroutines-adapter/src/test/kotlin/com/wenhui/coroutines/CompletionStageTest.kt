@@ -0,0 +1,104 @@
+package com.wenhui.coroutines
+
+import org.assertj.core.api.Java6Assertions.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+@RunWith(RobolectricTestRunner::class)
+@Config(constants = BuildConfig::class)
+class CompletionStageTest {
+
+    @Test
+    fun testToCompletableFuture() {
+        val future = from {
+            Thread.sleep(100)
+            1000
+        }.transform {
+            it + 100
+        }.toCompletableFuture()
+
+        assertThat(future.isDone).isEqualTo(false)
+        assertThat(future.get(1, TimeUnit.SECONDS)).isEqualTo(1100)
+    }
+
+    @Test
+    fun testToCompletableFuture_thenCompose() {
+        val future = from { 1000 }.toCompletableFuture().thenCompose { value ->
+            from { value + 100 }.toCompletableFuture()
+        }
+
+        assertThat(future.get(1, TimeUnit.SECONDS)).isEqualTo(1100)
+    }
+
+    @Test
+    fun testToCompletableFuture_error() {
+        val future = from {
+            throw IllegalStateException("Failed")
+        }.toCompletableFuture()
+
+        val error = future.handle { _, e -> e }.get(1, TimeUnit.SECONDS)
+        assertThat(error).isInstanceOf(IllegalStateException::class.java)
+    }
+
+    @Test
+    fun testToCompletableFuture_filtered() {
+        val future = from { 1000 }.filter { false }.toCompletableFuture()
+
+        future.handle { _, _ -> Unit }.get(1, TimeUnit.SECONDS)
+        assertThat(future.isCancelled).isEqualTo(true)
+    }
+
+    @Test
+    fun testToCompletableFuture_cancelFuture() {
+        val called = AtomicBoolean(false)
+        val future = from {
+            Thread.sleep(200)
+            1000
+        }.transform {
+            called.set(true)
+            it
+        }.toCompletableFuture()
+
+        future.cancel(false)
+        Thread.sleep(400)
+
+        assertThat(called.get()).isEqualTo(false)
+    }
+
+    @Test
+    fun testFromCompletionStage() {
+        val stage = CompletableFuture<Int>()
+        val future = fromCompletionStage(stage).transform { it + 100 }.toCompletableFuture()
+
+        assertThat(future.isDone).isEqualTo(false)
+        stage.complete(1000)
+        assertThat(future.get(1, TimeUnit.SECONDS)).isEqualTo(1100)
+    }
+
+    @Test
+    fun testFromCompletionStage_error() {
+        val stage = CompletableFuture<Int>()
+        val future = fromCompletionStage(stage.thenApply { it }).toCompletableFuture()
+
+        stage.completeExceptionally(IllegalStateException("Failed"))
+        val error = future.handle { _, e -> e }.get(1, TimeUnit.SECONDS)
+        assertThat(error).isInstanceOf(IllegalStateException::class.java)
+    }
+
+    @Test
+    fun testFromCompletionStage_cancelWork() {
+        val stage = CompletableFuture<Int>()
+        val worker = fromCompletionStage(stage).start()
+
+        Thread.sleep(100)
+        worker.cancel()
+        Thread.sleep(100)
+
+        assertThat(stage.isCancelled).isEqualTo(true)
+    }
+}
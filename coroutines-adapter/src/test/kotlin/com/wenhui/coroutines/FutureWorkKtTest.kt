@@ -8,6 +8,7 @@ import org.robolectric.RobolectricTestRunner
 import org.robolectric.annotation.Config
 import java.util.concurrent.CountDownLatch
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.atomic.AtomicReference
 
 @RunWith(RobolectricTestRunner::class)
@@ -68,4 +69,92 @@ class FutureWorkKtTest {
         assertThat(got.get()).isEqualTo("consume 1000")
     }
 
-}
\ No newline at end of file
+    @Test fun merge_failFast() {
+        val got = AtomicReference<Throwable>()
+        val startTime = System.currentTimeMillis()
+        merge({
+            Thread.sleep(1000)
+            "slow"
+        }, {
+            Thread.sleep(50)
+            throw IllegalStateException("Failed")
+        }).onError {
+            got.set(it)
+        }.start()
+
+        while (got.get() == null && System.currentTimeMillis() - startTime < 3000) {
+            Thread.sleep(10)
+            Robolectric.flushForegroundThreadScheduler()
+        }
+
+        // the error is surfaced without waiting for the slow work
+        assertThat(got.get()).isInstanceOf(IllegalStateException::class.java)
+        assertThat(System.currentTimeMillis() - startTime).isLessThan(1000)
+    }
+
+    @Test fun mergeAll_collectOutcomes() {
+        val got = AtomicReference<List<Outcome<String?>>>()
+        val doneSignal = CountDownLatch(1)
+        mergeAll({
+            Thread.sleep(300)
+            "consume"
+        }, {
+            throw IllegalStateException("Failed")
+        }, {
+            Thread.sleep(100)
+            "nullable"
+        }).onSuccess {
+            got.set(it)
+            doneSignal.countDown()
+        }.start()
+
+        doneSignal.await(3, TimeUnit.SECONDS)
+        Robolectric.flushForegroundThreadScheduler()
+
+        val outcomes = got.get()
+        assertThat(outcomes.map { it.isSuccess }).containsExactly(true, false, true)
+        assertThat(outcomes[0].value).isEqualTo("consume")
+        assertThat(outcomes[1].error).isInstanceOf(IllegalStateException::class.java)
+        assertThat(outcomes[2].value).isEqualTo("nullable")
+    }
+
+    @Test fun andMergeAll_cancelled() {
+        val merged = AtomicBoolean()
+        val worker = and({
+            Thread.sleep(300)
+            "consume"
+        }, {
+            Thread.sleep(300)
+            1000
+        }).mergeAll { str, n ->
+            merged.set(true)
+        }.start()
+
+        Thread.sleep(50)
+        worker.cancel()
+        Thread.sleep(500)
+
+        assertThat(merged.get()).isFalse()
+    }
+
+    @Test fun andMergeAll_partialResult() {
+        val got = AtomicReference<String>()
+        val doneSignal = CountDownLatch(1)
+        and({
+            Thread.sleep(200)
+            "consume"
+        }, {
+            throw IllegalStateException("Failed")
+        }).mergeAll { str, n ->
+            if (n.isSuccess) "${str.value} ${n.value}" else "${str.value} ${n.error?.message}"
+        }.onSuccess {
+            got.set(it)
+            doneSignal.countDown()
+        }.start()
+
+        doneSignal.await(3, TimeUnit.SECONDS)
+        Robolectric.flushForegroundThreadScheduler()
+
+        assertThat(got.get()).isEqualTo("consume Failed")
+    }
+}
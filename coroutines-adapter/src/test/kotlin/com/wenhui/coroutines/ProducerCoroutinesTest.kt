@@ -6,6 +6,7 @@ import org.junit.runner.RunWith
 import org.robolectric.Robolectric
 import org.robolectric.RobolectricTestRunner
 import org.robolectric.annotation.Config
+import java.util.concurrent.CopyOnWriteArrayList
 import java.util.concurrent.CountDownLatch
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicReference
@@ -107,4 +108,107 @@ class ProducerCoroutinesTest {
 
         assertThat(receivedItem.get()).isNull()
     }
-}
\ No newline at end of file
+
+    @Test
+    fun testProducer_metrics() {
+        val producer = consumeByPool<Int, String> {
+            if (it % 2 == 1) throw IllegalStateException("odd item")
+            it.toString()
+        }.start()
+
+        repeat(10) { producer.produce(it) }
+
+        val deadline = System.currentTimeMillis() + 2000
+        var metrics = producer.metrics()
+        while ((metrics.consumedCount < 10 || metrics.failedCount < 5) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+            metrics = producer.metrics()
+        }
+
+        assertThat(metrics.producedCount).isEqualTo(10)
+        assertThat(metrics.consumedCount).isEqualTo(10)
+        assertThat(metrics.failedCount).isEqualTo(5)
+        assertThat(metrics.droppedCount).isEqualTo(0)
+        assertThat(metrics.backlog).isEqualTo(0)
+        assertThat(metrics.maxQueueLatencyNanos).isGreaterThanOrEqualTo(metrics.averageQueueLatencyNanos)
+        producer.close()
+    }
+
+    @Test
+    fun testProducer_metricsDroppedAfterClose() {
+        val producer = consumeBy<Int, String> {
+            it.toString()
+        }.start()
+
+        producer.close()
+        producer.produce(1)
+        producer.produce(2)
+
+        val metrics = producer.metrics()
+        assertThat(metrics.producedCount).isEqualTo(0)
+        assertThat(metrics.droppedCount).isEqualTo(2)
+    }
+
+    @Test
+    fun testProducer_produceAll() {
+        val consumed = CopyOnWriteArrayList<Int>()
+        val producer = consumeByPool<Int, Unit> {
+            consumed.add(it)
+        }.start()
+
+        val accepted = producer.produceAll((0 until 100).toList()) + producer.produceAll(arrayOf(100, 101))
+
+        val deadline = System.currentTimeMillis() + 2000
+        while (consumed.size < 102 && System.currentTimeMillis() < deadline) Thread.sleep(10)
+        assertThat(accepted).isEqualTo(102)
+        assertThat(consumed.sorted()).isEqualTo((0 until 102).toList())
+        assertThat(producer.metrics().producedCount).isEqualTo(102)
+        producer.close()
+    }
+
+    @Test
+    fun testProducer_produceAllAfterClose() {
+        val producer = consumeBy<Int, String> {
+            it.toString()
+        }.start()
+
+        producer.close()
+
+        assertThat(producer.produceAll(listOf(1, 2, 3))).isEqualTo(0)
+        val metrics = producer.metrics()
+        assertThat(metrics.producedCount).isEqualTo(0)
+        assertThat(metrics.droppedCount).isEqualTo(3)
+    }
+
+    @Test
+    fun testProducer_produceAllUnsizedAfterClose() {
+        val producer = consumeBy<Int, String> {
+            it.toString()
+        }.start()
+
+        producer.close()
+
+        // an endless source is not walked to count the drops
+        assertThat(producer.produceAll(generateSequence(0) { it + 1 }.asIterable())).isEqualTo(0)
+        assertThat(producer.metrics().droppedCount).isEqualTo(0)
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun testProducer_produceAllIteratorError() {
+        val producer = consumeBy<Int, String> {
+            it.toString()
+        }.start()
+
+        try {
+            producer.produceAll(Iterable {
+                object : Iterator<Int> {
+                    override fun hasNext() = true
+
+                    override fun next(): Int = throw IllegalStateException()
+                }
+            })
+        } finally {
+            producer.close()
+        }
+    }
+}
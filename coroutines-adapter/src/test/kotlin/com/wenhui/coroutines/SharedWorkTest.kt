@@ -0,0 +1,116 @@
+package com.wenhui.coroutines
+
+import org.assertj.core.api.Java6Assertions.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+
+@RunWith(RobolectricTestRunner::class)
+@Config(constants = BuildConfig::class)
+class SharedWorkTest {
+
+    @Test
+    fun testShare_executeOnce() {
+        val executions = AtomicInteger()
+        val got = AtomicInteger()
+        val doneSignal = CountDownLatch(1)
+        val shared = from {
+            executions.incrementAndGet()
+            Thread.sleep(100)
+            1000
+        }.consume {
+            doneSignal.countDown()
+        }.share()
+
+        shared.onSuccess { got.addAndGet(it) }
+        shared.onSuccess { got.addAndGet(it) }
+
+        doneSignal.await(1, TimeUnit.SECONDS)
+        Thread.sleep(50)
+        Robolectric.flushForegroundThreadScheduler()
+
+        // late subscriber gets the result replayed
+        shared.onSuccess { got.addAndGet(it) }
+        Robolectric.flushForegroundThreadScheduler()
+
+        assertThat(executions.get()).isEqualTo(1)
+        assertThat(got.get()).isEqualTo(3000)
+        assertThat(shared.isCompleted).isEqualTo(true)
+    }
+
+    @Test
+    fun testShare_replayError() {
+        val got = AtomicReference<Throwable>()
+        val shared = from {
+            throw IllegalStateException("Failed")
+        }.share()
+
+        Thread.sleep(200)
+        shared.onError { got.set(it) }
+        Robolectric.flushForegroundThreadScheduler()
+
+        assertThat(got.get()).isInstanceOf(IllegalStateException::class.java)
+    }
+
+    @Test
+    fun testShare_executeAgainAfterRetention() {
+        val executions = AtomicInteger()
+        val got = AtomicInteger()
+        val shared = from {
+            executions.incrementAndGet()
+        }.share(100)
+
+        Thread.sleep(300)
+        shared.onSuccess { got.set(it) }
+        Thread.sleep(200)
+        Robolectric.flushForegroundThreadScheduler()
+
+        assertThat(executions.get()).isEqualTo(2)
+        assertThat(got.get()).isEqualTo(2)
+    }
+
+    @Test
+    fun testShare_cancel() {
+        val got = AtomicInteger()
+        val shared = from {
+            Thread.sleep(200)
+            1000
+        }.share()
+
+        shared.onSuccess { got.set(it) }
+        shared.cancel()
+        Thread.sleep(400)
+        Robolectric.flushForegroundThreadScheduler()
+
+        assertThat(got.get()).isEqualTo(0)
+        assertThat(shared.isCompleted).isEqualTo(true)
+    }
+
+    @Test
+    fun testShare_cancelDropsSubscribers() {
+        val shared = from {
+            Thread.sleep(200)
+            1000
+        }.share()
+
+        shared.onSuccess { }.onError { }
+        shared.cancel()
+        // subscribed after the cancel, after the retention of a released result it would restart the work
+        shared.onSuccess { }.onError { }
+
+        assertThat(subscribers(shared, "successActions")).isEmpty()
+        assertThat(subscribers(shared, "errorActions")).isEmpty()
+    }
+
+    private fun subscribers(shared: SharedWork<*>, name: String): List<*> {
+        val field = shared.javaClass.getDeclaredField(name)
+        field.isAccessible = true
+        return field.get(shared) as List<*>
+    }
+}
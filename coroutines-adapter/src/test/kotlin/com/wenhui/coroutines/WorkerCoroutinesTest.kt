@@ -18,7 +18,7 @@ class WorkerCoroutinesTest {
     fun TestCancelWork() {
         val doneSignal = CountDownLatch(1)
         val got = AtomicInteger(0)
-        val work = newFutureWork(TestAction(1000)).onSuccess {
+        val work = from(TestAction(1000)).onSuccess {
             got.set(it)
             doneSignal.countDown()
         }.setStartDelay(200).start()
@@ -37,7 +37,7 @@ class WorkerCoroutinesTest {
     fun TestWorkStatus_completeSuccess() {
         val doneSignal = CountDownLatch(1)
         val got = AtomicInteger(0)
-        val work = newFutureWork(TestAction(1000)).onSuccess {
+        val work = from(TestAction(1000)).onSuccess {
             got.set(it)
             doneSignal.countDown()
         }.start()
@@ -53,7 +53,7 @@ class WorkerCoroutinesTest {
     fun TestWorkStatus_cancelled() {
         val doneSignal = CountDownLatch(1)
         val got = AtomicInteger(0)
-        val work = newFutureWork(TestAction(1000)).onSuccess {
+        val work = from(TestAction(1000)).onSuccess {
             got.set(it)
             doneSignal.countDown()
         }.setStartDelay(200).start()
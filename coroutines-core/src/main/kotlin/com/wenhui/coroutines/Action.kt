@@ -0,0 +1,133 @@
+package com.wenhui.coroutines
+
+import kotlinx.coroutines.experimental.CoroutineScope
+import kotlinx.coroutines.experimental.Job
+import kotlinx.coroutines.experimental.runBlocking
+import java.util.concurrent.atomic.AtomicInteger
+
+internal interface Action<out T> {
+    /**
+     * Doing work asynchronously, this will be called from kotlin coroutines
+     */
+    suspend fun runAsync(scope: CoroutineScope): T
+
+    /**
+     * Doing work, block current thread until work is done, then return the result.
+     * Throw exception if there is any error.
+     */
+    @Throws(Exception::class) fun run(): T
+}
+
+/**
+ * The basic building block for a background work. This can be extended from Java.
+ *
+ * Subclass this when there is not coroutine call in action. When [interruptible] is `true`, cancelling the work
+ * interrupts the thread running [run], so a blocking call can stop right away instead of finishing for nothing
+ */
+abstract class BaseAction<out T> @JvmOverloads constructor(private val interruptible: Boolean = false) : Action<T> {
+
+    /**
+     * Called when the work is cancelled while [run] is running, from the thread cancelling it, e.g. to cancel the
+     * http call [run] is waiting for
+     */
+    open fun onCancel() {}
+
+    /**
+     * `false` for the actions of this library, which have no cancel hook, so they don't pay for one
+     */
+    internal open val hasCancelHook: Boolean get() = true
+
+    final override suspend fun runAsync(scope: CoroutineScope): T {
+        if (!hasCancelHook && !interruptible) return run()
+        val job = scope.coroutineContext[Job] ?: return run()
+        val cancelHandler = CancelHandler(this, Thread.currentThread(), interruptible)
+        val handle = job.invokeOnCompletion(onCancelling = true, handler = cancelHandler)
+        try {
+            if (!job.isActive) throw job.getCancellationException()
+            return run()
+        } finally {
+            handle.dispose()
+            cancelHandler.complete()
+        }
+    }
+}
+
+/**
+ * Calls [BaseAction.onCancel] and interrupts the [thread] running the action when its job is cancelled, the
+ * interrupt never outlives [complete], so the pool thread is never left interrupted
+ */
+private class CancelHandler(private val action: BaseAction<*>,
+                            private val thread: Thread,
+                            private val interruptible: Boolean) : (Throwable?) -> Unit {
+
+    private val state = AtomicInteger(RUNNING)
+
+    override fun invoke(cause: Throwable?) {
+        try {
+            action.onCancel()
+        } catch (e: Throwable) {
+            log { "Cancel hook failed: $e" }
+        }
+        if (interruptible && state.compareAndSet(RUNNING, INTERRUPTING)) {
+            thread.interrupt()
+            state.set(INTERRUPTED)
+        }
+    }
+
+    fun complete() {
+        if (state.compareAndSet(RUNNING, DONE)) return
+        // wait for the interrupt in progress, then clear it
+        while (state.get() == INTERRUPTING) Thread.yield()
+        Thread.interrupted()
+    }
+
+    private companion object {
+        const val RUNNING = 0
+        const val INTERRUPTING = 1
+        const val INTERRUPTED = 2
+        const val DONE = 3
+    }
+}
+
+/**
+ * Subclass this when there is coroutine call in the action
+ */
+internal abstract class BaseSuspendableAction<out T> : Action<T> {
+
+    /**
+     * run the action interrupt synchronously, and return the result, throw exception if there is error
+     *
+     * @throws [ExecutionException]
+     * @throws [CancellationException]
+     */
+    final override fun run(): T {
+        var result: T? = null
+        var exception: Throwable = CancellationException()
+        runBlocking { // blocking current thread util have the result
+            try {
+                result = runAsync(this)
+            } catch(e: Throwable) {
+                if (e is kotlinx.coroutines.experimental.CancellationException) {
+                    exception = CancellationException()
+                } else {
+                    exception = e
+                }
+            }
+        }
+
+        return result ?: throw exception
+    }
+}
+
+/**
+ * Discontinue current execution by throwing [IgnoreException]
+ */
+internal fun discontinueExecution(): Nothing = throw IgnoreException()
+
+internal fun shouldReportException(exception: Throwable): Boolean = exception !is IgnoreException
+
+
+/**
+ * Exception indicates the operation should be ignored
+ */
+internal class IgnoreException(message: String = "Ignore the execution") : Exception(message)
\ No newline at end of file
@@ -0,0 +1,52 @@
+package com.wenhui.coroutines
+
+import kotlinx.coroutines.experimental.CoroutineScope
+import kotlinx.coroutines.experimental.runBlocking
+import kotlinx.coroutines.experimental.suspendCancellableCoroutine
+
+/**
+ * Completes an [AsyncAction], only the first call of either method is used
+ */
+interface AsyncCallback<in T> {
+
+    fun onSuccess(result: T)
+
+    fun onError(error: Throwable)
+}
+
+/**
+ * The building block for a background work that completes from a callback, e.g. an http call with `enqueue()`. No
+ * thread is held while waiting for the callback, so many of these works can run on a few background threads.
+ * This can be extended from Java.
+ */
+abstract class AsyncAction<T> : Action<T> {
+
+    /**
+     * Start the operation and return right away, then complete it with [callback] from any thread
+     */
+    @Throws(Exception::class)
+    abstract fun start(callback: AsyncCallback<T>)
+
+    /**
+     * Called when the work is cancelled before the callback, e.g. to cancel the http call
+     */
+    open fun onCancel() {}
+
+    final override suspend fun runAsync(scope: CoroutineScope): T = suspendCancellableCoroutine { continuation ->
+        continuation.invokeOnCompletion { if (continuation.isCancelled) onCancel() }
+        start(object : AsyncCallback<T> {
+            override fun onSuccess(result: T) {
+                continuation.tryResume(result, null)?.let { continuation.completeResume(it) }
+            }
+
+            override fun onError(error: Throwable) {
+                continuation.tryResumeWithException(error)?.let { continuation.completeResume(it) }
+            }
+        })
+    }
+
+    /**
+     * Start the operation, and block the current thread until the callback
+     */
+    final override fun run(): T = runBlocking { runAsync(this) }
+}
@@ -0,0 +1,108 @@
+package com.wenhui.coroutines
+
+import kotlinx.coroutines.experimental.CancellableContinuation
+import kotlinx.coroutines.experimental.CancellationException
+import kotlinx.coroutines.experimental.suspendCancellableCoroutine
+import java.util.ArrayDeque
+import java.util.concurrent.RejectedExecutionException
+
+/**
+ * Limit the number of works of a group that run at the same time, so a burst of works from one feature can't take
+ * all the background threads. Set it to a work with [Starter.setBulkhead], and share the same instance by all the
+ * works of the group.
+ *
+ * Works over [maxConcurrency] wait for a free slot without holding a thread. When [maxQueueSize] works are already
+ * waiting, the work is rejected with a [BulkheadFullException], which is delivered to its `onError`.
+ */
+class Bulkhead(val name: String, val maxConcurrency: Int, val maxQueueSize: Int) {
+
+    init {
+        require(maxConcurrency > 0) { "Max concurrency must be positive" }
+        require(maxQueueSize >= 0) { "Max queue size must not be negative" }
+    }
+
+    private val lock = Any()
+    private val waiters = ArrayDeque<CancellableContinuation<Unit>>()
+    private var active = 0
+
+    /**
+     * Number of works that are running
+     */
+    val activeCount: Int get() = synchronized(lock) { active }
+
+    /**
+     * Number of works waiting for a slot
+     */
+    val queuedCount: Int get() = synchronized(lock) { waiters.size }
+
+    internal suspend inline fun <R> withPermit(block: () -> R): R {
+        acquire()
+        try {
+            return block()
+        } finally {
+            release()
+        }
+    }
+
+    internal suspend fun acquire() {
+        synchronized(lock) {
+            if (active < maxConcurrency) {
+                active++
+                return
+            }
+            if (waiters.size >= maxQueueSize) {
+                throw BulkheadFullException("Bulkhead $name is full: $active running, ${waiters.size} waiting")
+            }
+        }
+
+        var waiter: CancellableContinuation<Unit>? = null
+        try {
+            suspendCancellableCoroutine<Unit> { cont ->
+                waiter = cont
+                val acquired = synchronized(lock) {
+                    // A slot may have been released after the check above
+                    if (active < maxConcurrency) {
+                        active++
+                        true
+                    } else {
+                        waiters.add(cont)
+                        false
+                    }
+                }
+                if (acquired) {
+                    cont.resume(Unit)
+                } else {
+                    cont.invokeOnCompletion { if (cont.isCancelled) synchronized(lock) { waiters.remove(cont) } }
+                }
+            }
+        } catch (e: CancellationException) {
+            // The slot was handed over by release(), but the work was cancelled before it resumed
+            if (waiter?.isCancelled == false) release()
+            throw e
+        }
+    }
+
+    internal fun release() {
+        while (true) {
+            val waiter = synchronized(lock) {
+                waiters.poll() ?: run {
+                    active--
+                    return
+                }
+            }
+            // Hand the slot over to the waiter, unless it is cancelled in the meantime
+            val token = waiter.tryResume(Unit, null)
+            if (token != null) {
+                waiter.completeResume(token)
+                return
+            }
+        }
+    }
+
+    override fun toString() = "Bulkhead(name=$name, active=$activeCount, queued=$queuedCount)"
+}
+
+/**
+ * A work is rejected because its [Bulkhead] has too many waiting works
+ */
+class BulkheadFullException(message: String) : RejectedExecutionException(message)
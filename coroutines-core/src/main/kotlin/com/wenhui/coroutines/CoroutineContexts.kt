@@ -0,0 +1,115 @@
+package com.wenhui.coroutines
+
+import kotlinx.coroutines.experimental.CoroutineDispatcher
+import kotlinx.coroutines.experimental.asCoroutineDispatcher
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.coroutines.experimental.CoroutineContext
+import kotlin.coroutines.experimental.EmptyCoroutineContext
+
+// We want at least 2 threads and at most 6 threads in the core pool,
+// preferring to have 1 less than the CPU count to avoid saturating
+// the CPU with background work
+internal val THREAD_SIZE = Math.max(2, Math.min(Runtime.getRuntime().availableProcessors() - 1, 6))
+
+private const val BACKGROUND_NAME = "background"
+
+internal val BACKGROUND_METRICS: DispatcherMetrics by lazy { DispatcherMetrics(BACKGROUND_NAME, getSingletonConfig().executor) }
+internal val CONTEXT_BG: CoroutineDispatcher by lazy { newBackgroundDispatcher(getSingletonConfig()) }
+internal val CONTEXT_UI: CoroutineDispatcher by lazy { getSingletonConfig().platform.mainDispatcher }
+
+// Plain constants, so registering a context doesn't initialize the default ones before the configuration is set
+internal const val BACKGROUND_CONTEXT_NAME = "BACKGROUND"
+internal const val UI_CONTEXT_NAME = "UI"
+
+enum class CoroutineContexts(internal val context: CoroutineContext) {
+    BACKGROUND(CONTEXT_BG),
+    UI(CONTEXT_UI);
+
+    companion object {
+
+        /**
+         * Return the context registered as [name] in the [Configuration]
+         */
+        @JvmStatic
+        fun named(name: String): NamedContext {
+            return getSingletonConfig().namedContexts[name]
+                    ?: throw IllegalArgumentException("No context named $name in the Configuration")
+        }
+    }
+}
+
+/**
+ * A context registered with [Configuration.Builder.context] or [Configuration.Builder.serialContext], and found by
+ * [CoroutineContexts.named]. The operators take it wherever they take a [CoroutineContexts]
+ */
+class NamedContext internal constructor(val name: String, internal val context: CoroutineContext) {
+
+    override fun toString() = name
+}
+
+/**
+ * Runs one task at a time on [dispatcher] in the order they are dispatched, so the operators of this context never
+ * run in parallel, without a thread of its own. A suspending operator may interleave with another at its suspension
+ * points, like it does on a single thread
+ */
+internal class SerialDispatcher(private val dispatcher: CoroutineDispatcher) : CoroutineDispatcher(), Runnable {
+
+    private val tasks = ConcurrentLinkedQueue<Runnable>()
+    private val scheduled = AtomicBoolean()
+
+    override fun dispatch(context: CoroutineContext, block: Runnable) {
+        tasks.offer(block)
+        schedule()
+    }
+
+    override fun run() {
+        try {
+            tasks.poll()?.run()
+        } finally {
+            scheduled.set(false)
+            // one task per turn, so the other background works are not starved by a long queue
+            if (!tasks.isEmpty()) schedule()
+        }
+    }
+
+    private fun schedule() {
+        if (scheduled.compareAndSet(false, true)) dispatcher.dispatch(EmptyCoroutineContext, this)
+    }
+
+    override fun toString() = "Serial($dispatcher)"
+}
+
+private fun newBackgroundDispatcher(config: Configuration): CoroutineDispatcher {
+    if (!config.collectStats) return config.executor.asCoroutineDispatcher()
+
+    if (config.publishStatsMBean) registerStatsMBean(BACKGROUND_NAME, BACKGROUND_METRICS)
+    return InstrumentedDispatcher(config.executor, BACKGROUND_METRICS)
+}
+
+internal fun newDefaultExecutorService(): ExecutorService {
+    // Using ScheduledThreadPool instead of FixThreadPool since default ExecutorCoroutineDispatcherBase requires support delay,
+    // if a non ScheduledThreadPool is provided, Kotlin may just create one when it want to delay an execution
+    return Executors.newScheduledThreadPool(THREAD_SIZE, CoroutinesThreadFactory("CoroutinesAdapter-Background"))
+}
+
+private class CoroutinesThreadFactory(private val name: String) : ThreadFactory {
+    private val threadNo = AtomicInteger()
+
+    override fun newThread(target: Runnable?): Thread {
+        val threadName = "$name-${threadNo.incrementAndGet()}"
+        return CoroutinesThread(target, threadName)
+    }
+}
+
+private class CoroutinesThread(target: Runnable?, name: String) : Thread(target, name) {
+    override fun run() {
+        getSingletonConfig().platform.onBackgroundThreadStart()
+        super.run()
+    }
+}
+
@@ -0,0 +1,186 @@
+@file:JvmName("CoroutinesAdapter")
+
+package com.wenhui.coroutines
+
+import kotlinx.coroutines.experimental.CoroutineDispatcher
+import kotlinx.coroutines.experimental.asCoroutineDispatcher
+import java.io.File
+import java.io.Writer
+import java.util.concurrent.Executor
+
+@Volatile private var configuration: Configuration? = null
+
+/**
+ * Configure CoroutinesAdapter.
+ *
+ * This must be called before the first background work used
+ */
+fun configCoroutinesAdapter(config: Configuration) {
+    require(configuration == null) { "Configuration is already set" }
+    configuration = config
+    config.crashDumpFile?.let {
+        Thread.setDefaultUncaughtExceptionHandler(FlightRecorderCrashHandler(it, Thread.getDefaultUncaughtExceptionHandler()))
+    }
+}
+
+/**
+ * Return a snapshot of the statistics of the background dispatcher
+ */
+fun stats(): DispatcherStats = BACKGROUND_METRICS.snapshot()
+
+/**
+ * Return the works that are currently running, it is always empty unless [Configuration.Builder.watchdog] is set
+ */
+fun dumpActiveWorks(): List<ActiveWorkInfo> = ActiveWorks.toList().map { it.snapshot() }
+
+/**
+ * Write the events kept by the flight recorder to [file], oldest first
+ */
+fun dumpFlightRecorder(file: File) {
+    FLIGHT_RECORDER?.dump(file)
+}
+
+/**
+ * Write the events kept by the flight recorder to [writer], oldest first
+ */
+fun dumpFlightRecorder(writer: Writer) {
+    FLIGHT_RECORDER?.dump(writer)
+}
+
+internal val FLIGHT_RECORDER: FlightRecorder? get() = getSingletonConfig().flightRecorder
+
+internal fun getSingletonConfig(): Configuration {
+    val config = configuration ?: Configuration.Builder().build()
+    configuration = config
+    return config
+}
+
+class Configuration private constructor(internal val executor: Executor,
+                                         internal val tracer: WorkTracer?,
+                                         internal val collectStats: Boolean,
+                                         internal val publishStatsMBean: Boolean,
+                                         internal val watchdog: Watchdog?,
+                                         flightRecorderSize: Int,
+                                         internal val crashDumpFile: File?,
+                                         internal val platform: Platform,
+                                         private val contexts: Map<String, () -> CoroutineDispatcher>) {
+
+    internal val flightRecorder = if (flightRecorderSize > 0) FlightRecorder(flightRecorderSize) else null
+
+    /**
+     * The registered contexts, created the first time one is used
+     */
+    internal val namedContexts: Map<String, NamedContext> by lazy {
+        contexts.mapValues { (name, newDispatcher) -> NamedContext(name, newDispatcher()) }
+    }
+
+    class Builder {
+
+        private var executor: Executor? = null
+        private var tracer: WorkTracer? = null
+        private var collectStats = false
+        private var publishStatsMBean = false
+        private var watchdog: Watchdog? = null
+        private var flightRecorderSize = DEFAULT_FLIGHT_RECORDER_SIZE
+        private var crashDumpFile: File? = null
+        private var platform: Platform? = null
+        private val contexts = LinkedHashMap<String, () -> CoroutineDispatcher>()
+
+        /**
+         * Config the executor use to execute background work
+         */
+        fun executor(executor: Executor) = also { it.executor = executor }
+
+        /**
+         * Config the tracer that receives the events of every work execution, there is no tracing by default
+         */
+        fun tracer(tracer: WorkTracer) = also { it.tracer = tracer }
+
+        /**
+         * Collect the number of tasks, and the time they spend queued and running in the background executor, the
+         * statistics can be read with [stats]
+         */
+        fun collectStats() = also { it.collectStats = true }
+
+        /**
+         * Collect the statistics, and publish them as an MBean when JMX is available, it is ignored on Android
+         */
+        fun publishStatsMBean() = also {
+            it.collectStats = true
+            it.publishStatsMBean = true
+        }
+
+        /**
+         * Record the name, thread and stage of each running work, so they can be listed with [dumpActiveWorks] and
+         * [WorkManager.dumpActiveWorks], and notify [listener] when a work runs longer than [thresholdMillis]
+         */
+        fun watchdog(thresholdMillis: Long, listener: WatchdogListener) = also {
+            require(thresholdMillis > 0) { "Threshold must be positive" }
+            it.watchdog = Watchdog(thresholdMillis, listener)
+        }
+
+        /**
+         * Keep the most recent [events] of the works in the flight recorder, `0` turns it off. It is
+         * [DEFAULT_FLIGHT_RECORDER_SIZE] by default, also in release builds
+         */
+        fun flightRecorderSize(events: Int) = also {
+            require(events >= 0) { "Flight recorder size must not be negative" }
+            it.flightRecorderSize = events
+        }
+
+        /**
+         * Dump the flight recorder to [file] when the app crashes with an uncaught exception
+         */
+        fun dumpFlightRecorderOnCrash(file: File) = also { it.crashDumpFile = file }
+
+        /**
+         * Config the main dispatcher, background thread setup and debug log. It is the Android platform when the
+         * Android library is used, otherwise a [JvmPlatform]
+         */
+        fun platform(platform: Platform) = also { it.platform = platform }
+
+        /**
+         * Register a context running on [executor], e.g. a pool for decoding images, which operators use with
+         * [CoroutineContexts.named]
+         */
+        fun context(name: String, executor: Executor) = also { it.addContext(name) { executor.asCoroutineDispatcher() } }
+
+        /**
+         * Register a context running one operator at a time on the background executor, e.g. for the writes to a
+         * database, which operators use with [CoroutineContexts.named]. Each serial context is independent of the
+         * others, and none of them has a thread of its own
+         */
+        fun serialContext(name: String) = also { it.addContext(name) { SerialDispatcher(CONTEXT_BG) } }
+
+        private fun addContext(name: String, newDispatcher: () -> CoroutineDispatcher) {
+            require(name != BACKGROUND_CONTEXT_NAME && name != UI_CONTEXT_NAME && name !in contexts) {
+                "Context $name is already registered"
+            }
+            contexts[name] = newDispatcher
+        }
+
+        fun build(): Configuration {
+            return Configuration(executor = executor ?: newDefaultExecutorService(),
+                    tracer = tracer,
+                    collectStats = collectStats,
+                    publishStatsMBean = publishStatsMBean,
+                    watchdog = watchdog,
+                    flightRecorderSize = flightRecorderSize,
+                    crashDumpFile = crashDumpFile,
+                    platform = platform ?: loadDefaultPlatform(),
+                    contexts = LinkedHashMap(contexts))
+        }
+    }
+}
+
+
+/**
+ * For testing
+ */
+internal fun resetConfiguration() {
+    configuration = null
+    ActiveWorks.stopWatchdog()
+}
+
+
+
@@ -0,0 +1,126 @@
+package com.wenhui.coroutines
+
+import java.io.File
+import java.io.FileWriter
+import java.io.PrintWriter
+import java.io.Writer
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * Default number of events kept by the flight recorder, about 32KB
+ */
+const val DEFAULT_FLIGHT_RECORDER_SIZE = 1024
+
+// Event type of the messages from log(), after the ordinals of TraceEvent
+private const val TYPE_LOG = 0xFF
+
+// Each event takes 4 longs: the commit marker, the work id, the time and the packed type, stage and thread id
+private const val SLOT_SIZE = 4
+
+/**
+ * A fixed size ring buffer of the most recent work events, it is on by default, also in production, so there is a
+ * trail of what happened when a concurrency bug shows up. Recording an event is a few atomic writes, no lock and no
+ * allocation.
+ *
+ * A slot is marked as being written before its fields are updated, so a dump skips the events that are overwritten
+ * while it is reading them.
+ */
+internal class FlightRecorder(capacity: Int) {
+
+    private val size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1)
+    private val mask = (size - 1).toLong()
+    private val slots = AtomicLongArray(size * SLOT_SIZE)
+    private val messages = AtomicReferenceArray<String>(size)
+    private val sequence = AtomicLong()
+
+    fun record(workId: Long, event: TraceEvent, stage: Int, timeNanos: Long) {
+        write(workId, event.ordinal, stage, timeNanos, null)
+    }
+
+    fun log(message: String) {
+        write(0, TYPE_LOG, NO_STAGE, System.nanoTime(), message)
+    }
+
+    private fun write(workId: Long, type: Int, stage: Int, timeNanos: Long, message: String?) {
+        val seq = sequence.getAndIncrement()
+        val index = (seq and mask).toInt()
+        val base = index * SLOT_SIZE
+        slots.lazySet(base, 0)
+        slots.lazySet(base + 1, workId)
+        slots.lazySet(base + 2, timeNanos)
+        slots.lazySet(base + 3, (type.toLong() shl 48) or ((stage.toLong() and 0xFFFF) shl 32) or
+                (Thread.currentThread().id and 0xFFFFFFFFL))
+        messages.lazySet(index, message)
+        slots.lazySet(base, seq + 1)
+    }
+
+    /**
+     * Write the recorded events, oldest first, one event per line
+     */
+    fun dump(writer: Writer) {
+        val out = PrintWriter(writer)
+        val end = sequence.get()
+        val threads = Thread.getAllStackTraces().keys.associateBy({ it.id }, { it.name })
+        out.println("CoroutinesAdapter flight recorder, ${Math.min(end, size.toLong())} of $end events, now=${System.nanoTime()}")
+
+        var seq = Math.max(0, end - size)
+        while (seq < end) {
+            val index = (seq and mask).toInt()
+            val base = index * SLOT_SIZE
+            val marker = slots.get(base)
+            val workId = slots.get(base + 1)
+            val time = slots.get(base + 2)
+            val packed = slots.get(base + 3)
+            val message = messages.get(index)
+            seq++
+            // Skip the slot if it was being written or overwritten while reading it
+            if (marker != seq || slots.get(base) != marker) continue
+
+            val type = (packed ushr 48).toInt()
+            val stage = (packed shr 32).toShort().toInt()
+            val threadId = packed and 0xFFFFFFFFL
+            out.print(time)
+            out.print(" [")
+            out.print(threads[threadId] ?: "thread-$threadId")
+            out.print("] ")
+            if (type == TYPE_LOG) {
+                out.println(message)
+                continue
+            }
+            out.print("work=")
+            out.print(workId)
+            out.print(' ')
+            out.print(TraceEvent.values()[type])
+            if (stage != NO_STAGE) {
+                out.print(" stage=")
+                out.print(stage)
+            }
+            out.println()
+        }
+        out.flush()
+    }
+
+    fun dump(file: File) {
+        FileWriter(file).use { dump(it) }
+    }
+}
+
+/**
+ * Dump the flight recorder to [file] when a thread dies of an uncaught exception, then hand the exception over to
+ * the previous handler
+ */
+internal class FlightRecorderCrashHandler(private val file: File,
+                                          private val next: Thread.UncaughtExceptionHandler?) : Thread.UncaughtExceptionHandler {
+
+    override fun uncaughtException(thread: Thread, exception: Throwable) {
+        try {
+            log { "Uncaught exception in ${thread.name}: $exception" }
+            FLIGHT_RECORDER?.dump(file)
+        } catch (ignore: Throwable) {
+            // Nothing we can do while crashing
+        }
+        next?.uncaughtException(thread, exception)
+    }
+}
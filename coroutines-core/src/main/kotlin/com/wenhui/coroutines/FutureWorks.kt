@@ -0,0 +1,290 @@
+@file:JvmName("FutureWorks")
+
+package com.wenhui.coroutines
+
+import kotlinx.coroutines.experimental.CompletableDeferred
+import kotlinx.coroutines.experimental.CoroutineScope
+import kotlinx.coroutines.experimental.Deferred
+import kotlinx.coroutines.experimental.Job
+import kotlinx.coroutines.experimental.async
+import kotlinx.coroutines.experimental.suspendCancellableCoroutine
+import java.util.concurrent.CompletionException
+import java.util.concurrent.CompletionStage
+import java.util.concurrent.Future
+import java.util.concurrent.atomic.AtomicInteger
+
+
+/**
+ * Create a single background work
+ */
+fun <R> from(action: Function0<R>) = newFutureWork(ActionWork(action))
+
+/**
+ * Create a single background work, with the [arg] that will be passed into [action]
+ */
+fun <T, R> from(arg: T, action: Function1<T, R>) = newFutureWork(TransformActionWork(arg, action))
+
+/**
+ * Create a single background work from [BaseAction]
+ */
+fun <T> from(action: BaseAction<T>) = newFutureWork(action)
+
+/**
+ * Create a single background work from [AsyncAction], no thread is held while waiting for its callback
+ */
+fun <T> from(action: AsyncAction<T>) = newFutureWork(action)
+
+/**
+ * Create a background work from [stage], the work waits for the stage to complete without blocking any thread.
+ * Cancelling the work cancels the stage when it is a [Future].
+ *
+ * NOTE: on Android, [CompletionStage] only exists from API 24, the caller needs to check it
+ */
+fun <T> fromCompletionStage(stage: CompletionStage<T>) = newFutureWork(CompletionStageWork(stage))
+
+/**
+ * Create a background work that transform each item of [list] in parallel, the result keeps the order of [list].
+ *
+ * @see parallelMap
+ */
+fun <T, R> parallelMap(list: List<T>, action: Function1<T, R>) = newFutureWork(ParallelMapper(ActionWork { list }, action))
+
+/**
+ * Merge multiple background works of same types into one. All the works run in parallel, and the first error fails
+ * the merged work at once and cancels the rest of the works.
+ */
+fun <R> merge(action1: Function0<R?>, action2: Function0<R?>, vararg actions: Function0<R?>) = newFutureWork (MultiActionsWork(listOf(action1, action2, *actions)))
+fun <R> merge(actions: List<Function0<R?>>) = newFutureWork(MultiActionsWork(actions))
+
+/**
+ * Merge multiple background works of same types into one. All the works run to the end, and the [Outcome] of each
+ * work, either its result or its error, is returned in the same order as [actions], so partial results can still be
+ * used.
+ */
+fun <R> mergeAll(action1: Function0<R?>, action2: Function0<R?>, vararg actions: Function0<R?>) = newFutureWork(MultiOutcomesWork(listOf(action1, action2, *actions)))
+fun <R> mergeAll(actions: List<Function0<R?>>) = newFutureWork(MultiOutcomesWork(actions))
+
+/**
+ * Combine multiple background works into one
+ */
+fun <T1, T2> and(action1: Function0<T1?>, action2: Function0<T2?>): Merger<T1?, T2?> = MergeWork(listOf(action1, action2))
+fun <T1, T2, T3> and(action1: Function0<T1?>, action2: Function0<T2?>, action3: Function0<T3?>): TriMerger<T1?, T2?, T3?> = TriMergeWork(listOf(action1, action2, action3))
+fun <T1, T2, T3, T4> and(action1: Function0<T1?>, action2: Function0<T2?>, action3: Function0<T3?>, action4: Function0<T4?>): QuadMerger<T1?, T2?, T3?, T4?> = QuadMergeWork(listOf(action1, action2, action3, action4))
+
+
+/**
+ * A functional interface that accept 2 inputs and output 1 result
+ */
+interface Merger<T1, T2> {
+    /**
+     * Merge the results, the first error fails the merged work at once and cancels the rest of the works
+     */
+    fun <R> merge(mergeAction: Function2<T1?, T2?, R>): FutureWork<R>
+
+    /**
+     * Merge the outcomes, after all the works are done, no matter they succeeded or failed
+     */
+    fun <R> mergeAll(mergeAction: Function2<Outcome<T1>, Outcome<T2>, R>): FutureWork<R>
+}
+
+/**
+ * A functional interface that accept 3 inputs and output 1 result
+ */
+interface TriMerger<T1, T2, T3> {
+    /**
+     * Merge the results, the first error fails the merged work at once and cancels the rest of the works
+     */
+    fun <R> merge(mergeAction: Function3<T1?, T2?, T3?, R>): FutureWork<R>
+
+    /**
+     * Merge the outcomes, after all the works are done, no matter they succeeded or failed
+     */
+    fun <R> mergeAll(mergeAction: Function3<Outcome<T1>, Outcome<T2>, Outcome<T3>, R>): FutureWork<R>
+}
+
+/**
+ * A functional interface that accept 4 inputs and output 1 result
+ */
+interface QuadMerger<T1, T2, T3, T4> {
+    /**
+     * Merge the results, the first error fails the merged work at once and cancels the rest of the works
+     */
+    fun <R> merge(mergeAction: Function4<T1?, T2?, T3?, T4?, R>): FutureWork<R>
+
+    /**
+     * Merge the outcomes, after all the works are done, no matter they succeeded or failed
+     */
+    fun <R> mergeAll(mergeAction: Function4<Outcome<T1>, Outcome<T2>, Outcome<T3>, Outcome<T4>, R>): FutureWork<R>
+}
+
+/**
+ * The outcome of a work, either it succeeded with a [value], or failed with an [error]
+ */
+class Outcome<out T> internal constructor(val value: T?, val error: Throwable?) {
+
+    val isSuccess: Boolean get() = error == null
+
+    override fun toString() = if (isSuccess) "Success($value)" else "Failure($error)"
+}
+
+
+private class ActionWork<out R>(private val action: Function0<R>) : BaseAction<R>() {
+    override val hasCancelHook: Boolean get() = false
+
+    override fun run(): R = action()
+}
+
+/**
+ * How to deal with errors when running multiple actions in parallel
+ */
+internal enum class ErrorPolicy {
+    /**
+     * Surface the first error at once, and cancel the rest of the actions
+     */
+    FAIL_FAST,
+
+    /**
+     * Wait for all the actions to be done, and collect the [Outcome] of each of them
+     */
+    COLLECT_ALL
+}
+
+/**
+ * Run all the [actions] in parallel, and return the outcomes in the same order as [actions]
+ */
+private suspend fun <R> runAll(scope: CoroutineScope, actions: List<Function0<R>>, policy: ErrorPolicy): List<Outcome<R>> {
+    // Always run in background threads, even when called from FutureWork.get()
+    val context = scope.coroutineContext + CONTEXT_BG
+    val results = actions.map { async(context) { it() } }
+    return when (policy) {
+        ErrorPolicy.FAIL_FAST -> awaitFailFast(results)
+        ErrorPolicy.COLLECT_ALL -> {
+            val outcomes = results.map {
+                try {
+                    Outcome(it.await(), null)
+                } catch (e: Throwable) {
+                    // the error of the merged work itself is not an outcome of the action
+                    if (!scope.isActive) throw scope.coroutineContext[Job]!!.getCancellationException()
+                    Outcome<R>(null, e)
+                }
+            }
+            // don't merge the outcomes of a cancelled work
+            if (!scope.isActive) throw scope.coroutineContext[Job]!!.getCancellationException()
+            outcomes
+        }
+    }
+}
+
+/**
+ * Wait for all the [results], or throw the first error once it happens, without waiting for the ones before it.
+ *
+ * NOTE: a cancelled coroutine is only completed when its block returns, so awaiting the results in order
+ * would still wait for the slowest one
+ */
+private suspend fun <R> awaitFailFast(results: List<Deferred<R>>): List<Outcome<R>> {
+    if (results.isEmpty()) return emptyList()
+
+    val done = CompletableDeferred<Unit>()
+    val remaining = AtomicInteger(results.size)
+    val onCompletion: (Throwable?) -> Unit = { cause ->
+        if (cause != null) {
+            done.completeExceptionally(cause)
+            results.forEach { it.cancel(cause) }
+        } else if (remaining.decrementAndGet() == 0) {
+            done.complete(Unit)
+        }
+    }
+    results.forEach { it.invokeOnCompletion(onCompletion) }
+
+    done.await()
+    return results.map { Outcome(it.getCompleted(), null) }
+}
+
+private class MultiActionsWork<out R>(private val actions: List<Function0<R?>>) : BaseSuspendableAction<List<R?>>() {
+    override suspend fun runAsync(scope: CoroutineScope): List<R?> {
+        return runAll(scope, actions, ErrorPolicy.FAIL_FAST).map { it.value }
+    }
+}
+
+private class MultiOutcomesWork<R>(private val actions: List<Function0<R?>>) : BaseSuspendableAction<List<Outcome<R?>>>() {
+    override suspend fun runAsync(scope: CoroutineScope): List<Outcome<R?>> {
+        return runAll(scope, actions, ErrorPolicy.COLLECT_ALL)
+    }
+}
+
+private class CompletionStageWork<T>(private val stage: CompletionStage<T>) : BaseSuspendableAction<T>() {
+    override suspend fun runAsync(scope: CoroutineScope): T = suspendCancellableCoroutine { continuation ->
+        stage.whenComplete { value, error ->
+            if (error == null) {
+                continuation.resume(value)
+            } else {
+                continuation.resumeWithException((error as? CompletionException)?.cause ?: error)
+            }
+        }
+        continuation.invokeOnCompletion { if (continuation.isCancelled) (stage as? Future<*>)?.cancel(false) }
+    }
+}
+
+private class TransformActionWork<T, R>(private val arg: T,
+                                        private val action: Function1<T, R>) : BaseAction<R>() {
+    override val hasCancelHook: Boolean get() = false
+
+    override fun run(): R = action(arg)
+}
+
+/**
+ * Run all the actions of different types in parallel, and pass the outcomes to [merge] in the same order as [actions]
+ */
+private class CombineWork<R>(private val actions: List<Function0<*>>,
+                             private val policy: ErrorPolicy,
+                             private val merge: Function1<List<Outcome<*>>, R>) : BaseSuspendableAction<R>() {
+    override suspend fun runAsync(scope: CoroutineScope): R = merge(runAll(scope, actions, policy))
+}
+
+@Suppress("UNCHECKED_CAST")
+private class MergeWork<T1, T2>(private val actions: List<Function0<*>>) : Merger<T1, T2> {
+
+    override fun <R> merge(mergeAction: Function2<T1?, T2?, R>): FutureWork<R> {
+        return newFutureWork(CombineWork(actions, ErrorPolicy.FAIL_FAST) {
+            mergeAction(it[0].value as T1?, it[1].value as T2?)
+        })
+    }
+
+    override fun <R> mergeAll(mergeAction: Function2<Outcome<T1>, Outcome<T2>, R>): FutureWork<R> {
+        return newFutureWork(CombineWork(actions, ErrorPolicy.COLLECT_ALL) {
+            mergeAction(it[0] as Outcome<T1>, it[1] as Outcome<T2>)
+        })
+    }
+}
+
+@Suppress("UNCHECKED_CAST")
+private class TriMergeWork<T1, T2, T3>(private val actions: List<Function0<*>>) : TriMerger<T1, T2, T3> {
+
+    override fun <R> merge(mergeAction: Function3<T1?, T2?, T3?, R>): FutureWork<R> {
+        return newFutureWork(CombineWork(actions, ErrorPolicy.FAIL_FAST) {
+            mergeAction(it[0].value as T1?, it[1].value as T2?, it[2].value as T3?)
+        })
+    }
+
+    override fun <R> mergeAll(mergeAction: Function3<Outcome<T1>, Outcome<T2>, Outcome<T3>, R>): FutureWork<R> {
+        return newFutureWork(CombineWork(actions, ErrorPolicy.COLLECT_ALL) {
+            mergeAction(it[0] as Outcome<T1>, it[1] as Outcome<T2>, it[2] as Outcome<T3>)
+        })
+    }
+}
+
+@Suppress("UNCHECKED_CAST")
+private class QuadMergeWork<T1, T2, T3, T4>(private val actions: List<Function0<*>>) : QuadMerger<T1, T2, T3, T4> {
+
+    override fun <R> merge(mergeAction: Function4<T1?, T2?, T3?, T4?, R>): FutureWork<R> {
+        return newFutureWork(CombineWork(actions, ErrorPolicy.FAIL_FAST) {
+            mergeAction(it[0].value as T1?, it[1].value as T2?, it[2].value as T3?, it[3].value as T4?)
+        })
+    }
+
+    override fun <R> mergeAll(mergeAction: Function4<Outcome<T1>, Outcome<T2>, Outcome<T3>, Outcome<T4>, R>): FutureWork<R> {
+        return newFutureWork(CombineWork(actions, ErrorPolicy.COLLECT_ALL) {
+            mergeAction(it[0] as Outcome<T1>, it[1] as Outcome<T2>, it[2] as Outcome<T3>, it[3] as Outcome<T4>)
+        })
+    }
+}
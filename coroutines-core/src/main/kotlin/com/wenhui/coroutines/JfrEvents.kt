@@ -0,0 +1,217 @@
+package com.wenhui.coroutines
+
+import java.lang.reflect.Method
+import java.lang.reflect.Proxy
+
+/**
+ * JDK Flight Recorder events of the works, stages, callback dispatches, producers and [WorkManager] cancellations,
+ * they are only emitted when JFR is available, i.e. on a JVM, and the event is enabled in a recording.
+ *
+ * JFR is accessed by reflection and the event types are created with `jdk.jfr.EventFactory`, since jdk.jfr is not
+ * part of the Android SDK. Whether an event is enabled is cached, and only asked to JFR again when a recording
+ * starts or stops, so without a recording the events cost a volatile read
+ */
+internal object JfrEvents {
+
+    private val api: JfrApi? = try {
+        JfrApi()
+    } catch (e: Throwable) {
+        null // No JFR, e.g. on Android
+    }
+
+    val isAvailable: Boolean get() = api != null
+
+    val WORK = eventType("Work", "Work execution, from start() until the work completes",
+            field(Long::class.java, "workId"), field(String::class.java, "workName"), field(String::class.java, "outcome"))
+
+    val STAGE = eventType("Stage", "An operator stage running in its context",
+            field(Long::class.java, "workId"), field(String::class.java, "workName"), field(Int::class.java, "stage"),
+            field(Long::class.java, "queueTime", timespan = true))
+
+    val CALLBACK = eventType("Callback Dispatch", "A success or error callback waiting for the UI thread",
+            field(Long::class.java, "workId"), field(String::class.java, "workName"))
+
+    // One event per element or batch, so they are only recorded when a recording enables them by name
+
+    val PRODUCER_ENQUEUE = eventType("Producer Enqueue", "Elements produced to a producer, one by one or in a batch",
+            field(Boolean::class.java, "accepted"), field(Int::class.java, "count"), enabledByDefault = false)
+
+    val PRODUCER_DEQUEUE = eventType("Producer Dequeue", "An element picked up by a consumer",
+            field(Long::class.java, "queueLatency", timespan = true), enabledByDefault = false)
+
+    val WORK_MANAGER_CANCEL = eventType("WorkManager Cancel", "Works cancelled by a WorkManager",
+            field(String::class.java, "tag"))
+
+    private val types = listOfNotNull(WORK, STAGE, CALLBACK, PRODUCER_ENQUEUE, PRODUCER_DEQUEUE, WORK_MANAGER_CANCEL)
+
+    /**
+     * `true` if any of the events of a work is enabled in a recording
+     */
+    @Volatile var isWorkTraceEnabled = false
+        private set
+
+    init {
+        api?.let {
+            try {
+                it.addRecordingListener { refresh() }
+            } catch (e: Throwable) {
+                log { "Can't listen to JFR recordings: $e" }
+            }
+        }
+        refresh()
+    }
+
+    private fun refresh() {
+        types.forEach { it.refresh() }
+        isWorkTraceEnabled = WORK?.isEnabled == true || STAGE?.isEnabled == true || CALLBACK?.isEnabled == true
+    }
+
+    private fun field(type: Class<*>, name: String, timespan: Boolean = false) = JfrField(type, name, timespan)
+
+    private fun eventType(label: String, description: String, vararg fields: JfrField,
+                          enabledByDefault: Boolean = true): JfrEventType? {
+        val api = api ?: return null
+        return try {
+            JfrEventType(api, api.createFactory(label, description, fields, enabledByDefault))
+        } catch (e: Throwable) {
+            log { "Can't create JFR event $label: $e" }
+            null
+        }
+    }
+}
+
+internal class JfrField(val type: Class<*>, val name: String, val timespan: Boolean)
+
+/**
+ * A JFR event type, [begin] returns `null` when the event is not enabled, so there is no cost beyond the check
+ */
+internal class JfrEventType(private val api: JfrApi, private val factory: Any) {
+
+    private val eventType = api.getEventType.invoke(factory)
+
+    /**
+     * Whether the event is enabled in a recording, as of the last time a recording started or stopped
+     */
+    @Volatile var isEnabled = false
+        private set
+
+    fun refresh() {
+        isEnabled = api.isEnabled.invoke(eventType) as Boolean
+    }
+
+    fun begin(): JfrEvent? {
+        if (!isEnabled) return null
+        val event = api.newEvent.invoke(factory)
+        api.begin.invoke(event)
+        return JfrEvent(api, event)
+    }
+
+    /**
+     * Commit an event without duration, check [isEnabled] before, so the values aren't boxed for nothing
+     */
+    fun commit(vararg values: Any?) {
+        begin()?.commit(*values)
+    }
+}
+
+internal class JfrEvent(private val api: JfrApi, private val event: Any) {
+
+    /**
+     * End the event and commit it with the field [values], in the order of the fields of the event type
+     */
+    fun commit(vararg values: Any?) {
+        values.forEachIndexed { index, value -> api.set.invoke(event, index, value) }
+        api.end.invoke(event)
+        api.commit.invoke(event)
+    }
+}
+
+internal class JfrApi {
+    private val eventFactoryClass = Class.forName("jdk.jfr.EventFactory")
+    private val eventClass = Class.forName("jdk.jfr.Event")
+    private val annotationElementClass = Class.forName("jdk.jfr.AnnotationElement")
+    private val valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor")
+    private val annotationElement = annotationElementClass.getConstructor(Class::class.java, Any::class.java)
+    private val valueDescriptor = valueDescriptorClass.getConstructor(Class::class.java, String::class.java, List::class.java)
+    private val create = eventFactoryClass.getMethod("create", List::class.java, List::class.java)
+
+    val getEventType: Method = eventFactoryClass.getMethod("getEventType")
+    val isEnabled: Method = Class.forName("jdk.jfr.EventType").getMethod("isEnabled")
+    val newEvent: Method = eventFactoryClass.getMethod("newEvent")
+    val begin: Method = eventClass.getMethod("begin")
+    val end: Method = eventClass.getMethod("end")
+    val commit: Method = eventClass.getMethod("commit")
+    val set: Method = eventClass.getMethod("set", Int::class.java, Any::class.java)
+
+    private val flightRecorderClass = Class.forName("jdk.jfr.FlightRecorder")
+    private val listenerClass = Class.forName("jdk.jfr.FlightRecorderListener")
+
+    fun createFactory(label: String, description: String, fields: Array<out JfrField>, enabledByDefault: Boolean): Any {
+        val annotations = listOf(
+                annotation("jdk.jfr.Name", "com.wenhui.coroutines." + label.replace(" ", "")),
+                annotation("jdk.jfr.Label", label),
+                annotation("jdk.jfr.Description", description),
+                annotation("jdk.jfr.Category", arrayOf("CoroutinesAdapter")),
+                annotation("jdk.jfr.Enabled", enabledByDefault))
+        val descriptors = fields.map {
+            val fieldAnnotations = if (it.timespan) listOf(annotation("jdk.jfr.Timespan", "NANOSECONDS")) else emptyList()
+            valueDescriptor.newInstance(it.type, it.name, fieldAnnotations)
+        }
+        return create.invoke(null, annotations, descriptors)
+    }
+
+    private fun annotation(type: String, value: Any) = annotationElement.newInstance(Class.forName(type), value)
+
+    /**
+     * Call [onChange] when a recording changes state, the listener is a proxy of `jdk.jfr.FlightRecorderListener`
+     */
+    fun addRecordingListener(onChange: () -> Unit) {
+        val listener = Proxy.newProxyInstance(JfrApi::class.java.classLoader, arrayOf(listenerClass)) { proxy, method, args ->
+            when (method.name) {
+                "recordingStateChanged" -> onChange()
+                "equals" -> return@newProxyInstance proxy === args[0]
+                "hashCode" -> return@newProxyInstance System.identityHashCode(proxy)
+                "toString" -> return@newProxyInstance "CoroutinesAdapter JFR listener"
+            }
+            null
+        }
+        flightRecorderClass.getMethod("addListener", listenerClass).invoke(null, listener)
+    }
+}
+
+/**
+ * Pair the trace events of a work into JFR events
+ */
+internal class JfrWorkTrace(private val id: Long, private val name: String?) {
+
+    private var workEvent: JfrEvent? = null
+    private var stageEvent: JfrEvent? = null
+    private var stageEnqueueTime = 0L
+    private var stageBeginTime = 0L
+    private var callbackEvent: JfrEvent? = null
+
+    fun onEvent(event: TraceEvent, stage: Int, timeNanos: Long) {
+        when (event) {
+            TraceEvent.START -> workEvent = JfrEvents.WORK?.begin()
+            TraceEvent.STAGE_ENQUEUE -> stageEnqueueTime = timeNanos
+            TraceEvent.STAGE_BEGIN -> {
+                stageBeginTime = timeNanos
+                stageEvent = JfrEvents.STAGE?.begin()
+            }
+            TraceEvent.STAGE_END -> {
+                stageEvent?.commit(id, name, stage, stageBeginTime - stageEnqueueTime)
+                stageEvent = null
+            }
+            TraceEvent.CALLBACK_ENQUEUE -> callbackEvent = JfrEvents.CALLBACK?.begin()
+            TraceEvent.CALLBACK_RUN -> {
+                callbackEvent?.commit(id, name)
+                callbackEvent = null
+            }
+            TraceEvent.SUCCESS, TraceEvent.ERROR, TraceEvent.DISCONTINUE, TraceEvent.CANCEL -> {
+                workEvent?.commit(id, name, event.name)
+                workEvent = null
+            }
+            TraceEvent.START_DELAY_END -> Unit
+        }
+    }
+}
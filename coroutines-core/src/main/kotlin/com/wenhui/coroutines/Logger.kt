@@ -0,0 +1,16 @@
+package com.wenhui.coroutines
+
+/**
+ * Record the message in the flight recorder, and also print it with [Platform.log]. The message is only built when
+ * one of them is on
+ */
+internal inline fun log(message: () -> String) {
+    val config = getSingletonConfig()
+    val recorder = config.flightRecorder
+    val printed = config.platform.isLogEnabled
+    if (recorder == null && !printed) return
+
+    val text = message()
+    recorder?.log(text)
+    if (printed) config.platform.log(text)
+}
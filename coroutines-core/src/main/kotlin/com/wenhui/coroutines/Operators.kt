@@ -0,0 +1,85 @@
+package com.wenhui.coroutines
+
+import com.wenhui.coroutines.functions.ConsumeAction
+import kotlinx.coroutines.experimental.CoroutineScope
+import kotlinx.coroutines.experimental.Job
+import kotlinx.coroutines.experimental.withContext
+import kotlin.coroutines.experimental.ContinuationInterceptor
+import kotlin.coroutines.experimental.CoroutineContext
+
+/**
+ * An action with operator stages, which read the [WorkTrace] and the [ActiveWork] of the work from the context
+ */
+internal interface StagedAction
+
+internal abstract class BaseOperator<T, R>(private val dependedAction: Action<T>,
+                                           private val context: CoroutineContext) : Action<R>, StagedAction {
+
+    // The position of this operator in the chain, the source is stage 0
+    private val stage: Int = if (dependedAction is BaseOperator<*, *>) dependedAction.stage + 1 else 1
+
+    override suspend fun runAsync(scope: CoroutineScope): R {
+        val t = dependedAction.runAsync(scope)
+        // Stop at the stage boundary when the work is cancelled while the previous stage was running
+        if (!scope.isActive) throw scope.coroutineContext[Job]!!.getCancellationException()
+
+        val trace = scope.coroutineContext[WorkTrace]
+        val activeWork = scope.coroutineContext[ActiveWork]
+        // Already on the dispatcher of this stage, e.g. a background stage after a background source
+        val sameContext = scope.coroutineContext[ContinuationInterceptor] === context
+        if (trace == null && activeWork == null) {
+            return if (sameContext) onRun(t) else withContext(context) { onRun(t) }
+        }
+
+        trace?.trace(TraceEvent.STAGE_ENQUEUE, stage)
+        return if (sameContext) runStage(t, trace, activeWork) else withContext(context) { runStage(t, trace, activeWork) }
+    }
+
+    private fun runStage(input: T, trace: WorkTrace?, activeWork: ActiveWork?): R {
+        trace?.trace(TraceEvent.STAGE_BEGIN, stage)
+        activeWork?.beginStage(stage)
+        try {
+            return onRun(input)
+        } finally {
+            activeWork?.endStage()
+            trace?.trace(TraceEvent.STAGE_END, stage)
+        }
+    }
+
+    override fun run(): R {
+        val t = dependedAction.run()
+        return onRun(t)
+    }
+
+    protected abstract fun onRun(input: T): R
+}
+
+internal class Transformer<T, R>(dependedAction: Action<T>,
+                                 context: CoroutineContext,
+                                 private val transform: Function1<T, R>) : BaseOperator<T, R>(dependedAction, context) {
+    override fun onRun(input: T): R = transform(input)
+}
+
+/**
+ * Consume the item T.
+ *
+ * NOTE: the name Consumer is taken, so User in this case is the Consumer
+ */
+internal class User<T>(dependedAction: Action<T>,
+                       context: CoroutineContext,
+                       private val consume: ConsumeAction<T>) : BaseOperator<T, T>(dependedAction, context) {
+    override fun onRun(input: T): T {
+        consume(input)
+        return input
+    }
+}
+
+internal class Filter<T>(dependedAction: Action<T>,
+                         context: CoroutineContext,
+                         private val filter: FilterAction<T>) : BaseOperator<T, T>(dependedAction, context) {
+    override fun onRun(input: T): T {
+        if (!filter(input)) discontinueExecution()
+        return input
+    }
+}
+
@@ -0,0 +1,140 @@
+@file:JvmName("ParallelOperators")
+
+package com.wenhui.coroutines
+
+import kotlinx.coroutines.experimental.CoroutineScope
+import kotlinx.coroutines.experimental.Deferred
+import kotlinx.coroutines.experimental.async
+import kotlinx.coroutines.experimental.runBlocking
+import kotlinx.coroutines.experimental.withContext
+import kotlin.coroutines.experimental.CoroutineContext
+
+// A chunk should keep a background thread busy for about this long, so the cost of dispatching it is negligible
+private const val TARGET_CHUNK_NANOS = 500_000L
+
+// Number of elements processed up front to estimate the cost of a single element
+private const val SAMPLE_SIZE = 8
+
+// Split into a few more chunks than threads, so a slow chunk doesn't hold up the others
+private val MAX_CHUNKS = THREAD_SIZE * 4
+
+/**
+ * Transform each item of the list in parallel in background threads, the result keeps the order of the input.
+ *
+ * The list is split into chunks, sized from the measured cost of the first few items and the number of background
+ * threads, so cheap items on a short list are simply transformed sequentially.
+ *
+ * NOTE: [action] is called from different threads at the same time, make sure it is stateless
+ */
+fun <T, U, S> Work<out List<T>, S>.parallelMap(action: Function1<T, U>): Work<List<U>, S> {
+    return chainWork(this) { ParallelMapper(it, action) }
+}
+
+/**
+ * Filter the items of the list in parallel in background threads, return `true` to keep the item, `false` to drop
+ * it. The result keeps the order of the input.
+ *
+ * NOTE: [action] is called from different threads at the same time, make sure it is stateless
+ */
+fun <T, S> Work<out List<T>, S>.parallelFilter(action: FilterAction<T>): Work<List<T>, S> {
+    return chainWork(this) { ParallelFilter(it, action) }
+}
+
+@Suppress("UNCHECKED_CAST")
+private fun <T, U, S> chainWork(work: Work<out T, S>, operator: Function1<Action<T>, Action<U>>): Work<U, S> {
+    val chainable = work as? ChainableWork<T, S> ?: throw IllegalArgumentException("Unsupported work: $work")
+    return chainable.chain(operator)
+}
+
+/**
+ * Base operator that splits a list into chunks and processes them in parallel in [CONTEXT_BG]
+ */
+internal abstract class ParallelOperator<T, R>(private val dependedAction: Action<List<T>>) : Action<List<R>> {
+
+    override suspend fun runAsync(scope: CoroutineScope): List<R> {
+        val input = dependedAction.runAsync(scope)
+        return withContext(CONTEXT_BG) { process(input, scope.coroutineContext) }
+    }
+
+    override fun run(): List<R> {
+        val input = dependedAction.run()
+        return runBlocking { process(input, coroutineContext) }
+    }
+
+    private suspend fun process(list: List<T>, parentContext: CoroutineContext): List<R> {
+        // Items are accessed by index from different chunks
+        val input: List<T> = if (list is RandomAccess) list else ArrayList(list)
+        val size = input.size
+        if (size == 0) return emptyList()
+
+        // Process the first few items in the current thread to learn how expensive an item is
+        val sampleSize = Math.min(SAMPLE_SIZE, size)
+        val result = ArrayList<R>(size)
+        val startTime = System.nanoTime()
+        onChunk(input, 0, sampleSize, result)
+        if (sampleSize == size) return result
+
+        val costPerItem = Math.max(1L, (System.nanoTime() - startTime) / sampleSize)
+        val remaining = size - sampleSize
+        val chunkSize = chunkSize(costPerItem, remaining)
+        if (chunkSize >= remaining) {
+            // Not worth to split, the dispatching would cost more than the work itself
+            onChunk(input, sampleSize, size, result)
+            return result
+        }
+
+        // Chunks are children of the current job, so they are cancelled together with the work
+        val context = parentContext + CONTEXT_BG
+        val chunks = ArrayList<Deferred<List<R>>>(remaining / chunkSize + 1)
+        var from = sampleSize
+        while (from < size) {
+            val to = Math.min(from + chunkSize, size)
+            val chunkFrom = from
+            chunks.add(async(context) { ArrayList<R>(to - chunkFrom).also { onChunk(input, chunkFrom, to, it) } })
+            from = to
+        }
+
+        try {
+            chunks.forEach { result.addAll(it.await()) }
+        } catch (e: Throwable) {
+            // One chunk failed, no need to keep the rest of them running
+            chunks.forEach { it.cancel() }
+            throw e
+        }
+        return result
+    }
+
+    /**
+     * Process the items of [input] from index [from] (inclusive) to [to] (exclusive), and add the results to [output]
+     */
+    protected abstract fun onChunk(input: List<T>, from: Int, to: Int, output: MutableList<R>)
+}
+
+/**
+ * Return the number of items in a chunk, so that each chunk runs for about [TARGET_CHUNK_NANOS], but never split
+ * the work into more than [MAX_CHUNKS] chunks
+ */
+internal fun chunkSize(costPerItem: Long, size: Int): Int {
+    val byCost = Math.max(1L, TARGET_CHUNK_NANOS / Math.max(1L, costPerItem))
+    val byCount = (size + MAX_CHUNKS - 1) / MAX_CHUNKS
+    return Math.min(size.toLong(), Math.max(byCost, byCount.toLong())).toInt()
+}
+
+internal class ParallelMapper<T, R>(dependedAction: Action<List<T>>,
+                                    private val transform: Function1<T, R>) : ParallelOperator<T, R>(dependedAction) {
+    override fun onChunk(input: List<T>, from: Int, to: Int, output: MutableList<R>) {
+        for (i in from until to) {
+            output.add(transform(input[i]))
+        }
+    }
+}
+
+internal class ParallelFilter<T>(dependedAction: Action<List<T>>,
+                                 private val filter: FilterAction<T>) : ParallelOperator<T, T>(dependedAction) {
+    override fun onChunk(input: List<T>, from: Int, to: Int, output: MutableList<T>) {
+        for (i in from until to) {
+            val item = input[i]
+            if (filter(item)) output.add(item)
+        }
+    }
+}
@@ -0,0 +1,274 @@
+@file:JvmName("Pipelines")
+
+package com.wenhui.coroutines
+
+import com.wenhui.coroutines.functions.ConsumeAction
+import kotlinx.coroutines.experimental.CoroutineScope
+import kotlinx.coroutines.experimental.Job
+import kotlinx.coroutines.experimental.withContext
+import kotlin.coroutines.experimental.ContinuationInterceptor
+import kotlin.coroutines.experimental.CoroutineContext
+
+/**
+ * Start defining a [Pipeline] whose input is [T]
+ */
+fun <T> pipeline(): Pipeline<T, T> = Pipeline(emptyArray(), PipelineSettings())
+
+/**
+ * An immutable chain of operators and callbacks, defined once and executed with different inputs by [execute], or
+ * bound to a producer by [consumeBy] and [consumeByPool]. Every method returns a new pipeline, so a pipeline can be
+ * shared by any number of threads.
+ *
+ * Unlike [Work], the operators are not rebuilt for each execution, and the consecutive operators of the same
+ * context run in one switch to that context
+ */
+class Pipeline<I, O> internal constructor(internal val stages: Array<PipelineStage>,
+                                          private val settings: PipelineSettings) {
+
+    private val launcher: WorkLauncher<O> = settings.newLauncher()
+
+    /**
+     * Transform the output in background thread
+     */
+    fun <U> transform(action: Function1<O, U>): Pipeline<I, U> = transform(CoroutineContexts.BACKGROUND, action)
+
+    /**
+     * Transform the output in [context]
+     */
+    fun <U> transform(context: CoroutineContexts, action: Function1<O, U>): Pipeline<I, U> {
+        return withStage(TransformStage(context.context, action))
+    }
+
+    /**
+     * Transform the output in [context], registered in the [Configuration]
+     */
+    fun <U> transform(context: NamedContext, action: Function1<O, U>): Pipeline<I, U> {
+        return withStage(TransformStage(context.context, action))
+    }
+
+    /**
+     * Consume the output in background thread
+     */
+    fun consume(action: ConsumeAction<O>): Pipeline<I, O> = consume(CoroutineContexts.BACKGROUND, action)
+
+    /**
+     * Consume the output in [context]
+     */
+    fun consume(context: CoroutineContexts, action: ConsumeAction<O>): Pipeline<I, O> {
+        return withStage(ConsumeStage(context.context, action))
+    }
+
+    /**
+     * Consume the output in [context], registered in the [Configuration]
+     */
+    fun consume(context: NamedContext, action: ConsumeAction<O>): Pipeline<I, O> {
+        return withStage(ConsumeStage(context.context, action))
+    }
+
+    /**
+     * Kotlin specific version of consume
+     */
+    fun consume(context: CoroutineContexts = CoroutineContexts.BACKGROUND, action: KConsumeAction<O>): Pipeline<I, O> {
+        return consume(context, KConsumeActionWrapper(action))
+    }
+
+    /**
+     * Kotlin specific version of consume in a context registered in the [Configuration]
+     */
+    fun consume(context: NamedContext, action: KConsumeAction<O>): Pipeline<I, O> {
+        return consume(context, KConsumeActionWrapper(action))
+    }
+
+    /**
+     * Filter the output in background thread, return `true` is the output is valid, `false` to ignore it
+     */
+    fun filter(action: FilterAction<O>): Pipeline<I, O> = filter(CoroutineContexts.BACKGROUND, action)
+
+    /**
+     * Filter the output in [context], return `true` is the output is valid, `false` to ignore it
+     */
+    fun filter(context: CoroutineContexts, action: FilterAction<O>): Pipeline<I, O> {
+        return withStage(FilterStage(context.context, action))
+    }
+
+    /**
+     * Filter the output in [context], registered in the [Configuration]
+     */
+    fun filter(context: NamedContext, action: FilterAction<O>): Pipeline<I, O> {
+        return withStage(FilterStage(context.context, action))
+    }
+
+    /**
+     * Callback on UI thread when an execution succeeded
+     */
+    fun onSuccess(action: ConsumeAction<O>): Pipeline<I, O> = Pipeline(stages, settings.copy(successAction = action))
+
+    /**
+     * [Kotlin version] Callback on UI thread when an execution succeeded
+     */
+    fun onSuccess(action: KConsumeAction<O>): Pipeline<I, O> = onSuccess(KConsumeActionWrapper(action))
+
+    /**
+     * Callback on UI thread when an execution failed
+     */
+    fun onError(action: ConsumeAction<Throwable>): Pipeline<I, O> = Pipeline(stages, settings.copy(errorAction = action))
+
+    /**
+     * [Kotlin version] Callback on UI thread when an execution failed
+     */
+    fun onError(action: KConsumeAction<Throwable>): Pipeline<I, O> = onError(KConsumeActionWrapper(action))
+
+    /**
+     * Name the executions, so they can be identified by a [WorkTracer]
+     */
+    fun setName(name: String): Pipeline<I, O> = Pipeline(stages, settings.copy(name = name))
+
+    /**
+     * Limit the concurrency of the executions together with the other works of the [bulkhead]
+     */
+    fun setBulkhead(bulkhead: Bulkhead): Pipeline<I, O> = Pipeline(stages, settings.copy(bulkhead = bulkhead))
+
+    /**
+     * Limit the start rate of the executions together with the other works of the [rateLimiter]
+     */
+    fun setRateLimiter(rateLimiter: RateLimiter): Pipeline<I, O> = Pipeline(stages, settings.copy(rateLimiter = rateLimiter))
+
+    /**
+     * Run the pipeline with [input] in background
+     */
+    fun execute(input: I): Worker = WorkerImpl(launcher.launch(CONTEXT_BG, null, PipelineAction(stages, input)))
+
+    /**
+     * Run the operators after the producer elements, with the callbacks and settings of this pipeline
+     */
+    internal fun bind(producerWork: Work<I, Producer<I>>): WorkStarter<O, Producer<I>> {
+        @Suppress("UNCHECKED_CAST")
+        val work = (producerWork as ChainableWork<I, Producer<I>>).chain { PipelineOperator<I, O>(it, stages) }
+        settings.applyTo(work)
+        return work
+    }
+
+    private fun <U> withStage(stage: PipelineStage): Pipeline<I, U> = Pipeline(stages + stage, settings)
+}
+
+internal data class PipelineSettings(val successAction: ConsumeAction<*>? = null,
+                                     val errorAction: ConsumeAction<Throwable>? = null,
+                                     val name: String? = null,
+                                     val bulkhead: Bulkhead? = null,
+                                     val rateLimiter: RateLimiter? = null) {
+
+    @Suppress("UNCHECKED_CAST")
+    fun <T> applyTo(work: WorkStarter<T, *>) {
+        successAction?.let { work.onSuccess(it as ConsumeAction<T>) }
+        errorAction?.let { work.onError(it) }
+        name?.let { work.setName(it) }
+        bulkhead?.let { work.setBulkhead(it) }
+        rateLimiter?.let { work.setRateLimiter(it) }
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    fun <T> newLauncher() = WorkLauncher<T>().also {
+        it.successAction = successAction as ConsumeAction<T>?
+        it.errorAction = errorAction
+        it.name = name
+        it.bulkhead = bulkhead
+        it.rateLimiter = rateLimiter
+    }
+}
+
+internal abstract class PipelineStage(val context: CoroutineContext) {
+    abstract fun run(input: Any?): Any?
+}
+
+private class TransformStage<T, R>(context: CoroutineContext,
+                                   private val transform: Function1<T, R>) : PipelineStage(context) {
+    @Suppress("UNCHECKED_CAST")
+    override fun run(input: Any?): Any? = transform(input as T)
+}
+
+private class ConsumeStage<T>(context: CoroutineContext,
+                              private val consume: ConsumeAction<T>) : PipelineStage(context) {
+    @Suppress("UNCHECKED_CAST")
+    override fun run(input: Any?): Any? {
+        consume(input as T)
+        return input
+    }
+}
+
+private class FilterStage<T>(context: CoroutineContext,
+                             private val filter: FilterAction<T>) : PipelineStage(context) {
+    @Suppress("UNCHECKED_CAST")
+    override fun run(input: Any?): Any? {
+        if (!filter(input as T)) discontinueExecution()
+        return input
+    }
+}
+
+/**
+ * An execution of the [stages] with [input]
+ */
+private class PipelineAction<I, O>(private val stages: Array<PipelineStage>,
+                                   private val input: I?) : BaseSuspendableAction<O>(), StagedAction {
+
+    @Suppress("UNCHECKED_CAST")
+    override suspend fun runAsync(scope: CoroutineScope): O = runStages(scope, stages, input) as O
+}
+
+/**
+ * The [stages] run after [dependedAction], e.g. after a producer element
+ */
+private class PipelineOperator<I, O>(private val dependedAction: Action<I>,
+                                     private val stages: Array<PipelineStage>) : BaseSuspendableAction<O>(), StagedAction {
+
+    @Suppress("UNCHECKED_CAST")
+    override suspend fun runAsync(scope: CoroutineScope): O = runStages(scope, stages, dependedAction.runAsync(scope)) as O
+}
+
+private suspend fun runStages(scope: CoroutineScope, stages: Array<PipelineStage>, input: Any?): Any? {
+    val coroutineContext = scope.coroutineContext
+    val trace = coroutineContext[WorkTrace]
+    val activeWork = coroutineContext[ActiveWork]
+    val dispatcher = coroutineContext[ContinuationInterceptor]
+    var value = input
+    var start = 0
+    while (start < stages.size) {
+        // Stop at the stage boundary when the work is cancelled while the previous stage was running
+        if (!scope.isActive) throw coroutineContext[Job]!!.getCancellationException()
+
+        // Run the consecutive stages of the same context together
+        val context = stages[start].context
+        var end = start + 1
+        while (end < stages.size && stages[end].context === context) end++
+
+        val from = start
+        trace?.trace(TraceEvent.STAGE_ENQUEUE, from + 1)
+        value = if (context === dispatcher) {
+            runStages(scope, stages, from, end, value, trace, activeWork)
+        } else {
+            val current = value
+            withContext(context) { runStages(scope, stages, from, end, current, trace, activeWork) }
+        }
+        start = end
+    }
+    return value
+}
+
+private fun runStages(scope: CoroutineScope, stages: Array<PipelineStage>, from: Int, end: Int, input: Any?,
+                      trace: WorkTrace?, activeWork: ActiveWork?): Any? {
+    var value = input
+    for (i in from until end) {
+        if (i > from && !scope.isActive) throw scope.coroutineContext[Job]!!.getCancellationException()
+        // The stage numbers match the operators of a work, the source is stage 0
+        val stage = i + 1
+        if (i > from) trace?.trace(TraceEvent.STAGE_ENQUEUE, stage)
+        trace?.trace(TraceEvent.STAGE_BEGIN, stage)
+        activeWork?.beginStage(stage)
+        try {
+            value = stages[i].run(value)
+        } finally {
+            activeWork?.endStage()
+            trace?.trace(TraceEvent.STAGE_END, stage)
+        }
+    }
+    return value
+}
@@ -0,0 +1,53 @@
+package com.wenhui.coroutines
+
+import kotlinx.coroutines.experimental.CoroutineDispatcher
+import kotlinx.coroutines.experimental.newSingleThreadContext
+
+/**
+ * The parts of CoroutinesAdapter that depend on where it runs, the Android library provides one for the Android main
+ * thread, which is used automatically when it is on the classpath
+ */
+interface Platform {
+
+    /**
+     * The dispatcher of [CoroutineContexts.UI], which also runs [Work.onSuccess] and [Work.onError] callbacks
+     */
+    val mainDispatcher: CoroutineDispatcher
+
+    /**
+     * Called on each thread of the default background executor before it runs any work, e.g. to lower its priority
+     */
+    fun onBackgroundThreadStart() {}
+
+    /**
+     * Whether [log] prints the debug messages, they are not built at all when it is false, which is the default
+     */
+    val isLogEnabled: Boolean get() = false
+
+    /**
+     * Print a debug message of CoroutinesAdapter, it does nothing by default
+     */
+    fun log(message: String) {}
+}
+
+/**
+ * The platform of a plain JVM, [CoroutineContexts.UI] is a single "CoroutinesAdapter-Main" thread
+ */
+open class JvmPlatform : Platform {
+
+    override val mainDispatcher: CoroutineDispatcher by lazy { newSingleThreadContext("CoroutinesAdapter-Main") }
+
+    override fun onBackgroundThreadStart() {
+        Thread.currentThread().priority = Thread.NORM_PRIORITY - 1
+    }
+}
+
+private const val ANDROID_PLATFORM = "com.wenhui.coroutines.AndroidPlatform"
+
+internal fun loadDefaultPlatform(): Platform {
+    return try {
+        Class.forName(ANDROID_PLATFORM).newInstance() as Platform
+    } catch (exception: ClassNotFoundException) {
+        JvmPlatform()
+    }
+}
@@ -0,0 +1,505 @@
+@file:JvmName("Producers")
+
+package com.wenhui.coroutines
+
+import com.wenhui.coroutines.functions.ConsumeAction
+import kotlinx.coroutines.experimental.CoroutineScope
+import kotlinx.coroutines.experimental.Job
+import kotlinx.coroutines.experimental.channels.Channel
+import kotlinx.coroutines.experimental.channels.ReceiveChannel
+import kotlinx.coroutines.experimental.channels.SendChannel
+import kotlinx.coroutines.experimental.launch
+import java.io.BufferedReader
+import java.io.InputStream
+import java.io.InputStreamReader
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.Charset
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+
+// Use all the available threads, this doesn't mean other work will be blocked, they will be executed in parallel
+private val CONSUMER_POOL_SIZE = THREAD_SIZE
+
+// The elements of a source waiting in the producer, enough to keep every consumer of a pool busy
+private val SOURCE_PREFETCH = CONSUMER_POOL_SIZE * 2
+
+private const val DEFAULT_REGION_SIZE = 4 * 1024 * 1024
+
+/**
+ * Utility method to create a [Producer], and the producer can be used to execute items by calling [Producer.produce],
+ * producer will be active until [Producer.close] is called, or when using [WorkManager], producer will be
+ * closed when [WorkManager.cancelAllWorks] is called.
+ *
+ * NOTE: the producer will only execute one item at a time, and if an item is received before the previous work
+ * completed, previous work will be cancelled and the current item will be consumed immediately
+ */
+fun <T, R> consumeBy(action: Function1<T, R>): Work<R, Producer<T>> {
+    val channel = newChannel<T>()
+    val parentJob = parentJob()
+    val stats = ProducerStats()
+    val producer = ProducerImpl(channel, parentJob, stats)
+    val consumer = ConsumerImpl(channel, parentJob, stats, action)
+    return ProducerConsumer(producer, consumer, stats, consumer)
+}
+
+/**
+ * Utility method to create a [Producer], whose item will be consumed by a pool of consumers, and the producer can be
+ * used to execute items by calling [Producer.produce], producer will be active until [Producer.close] is called,
+ * or when using [WorkManager], producer will be closed when [WorkManager.cancelAllWorks] is called.
+ *
+ * NOTE: Since all the operators will be shared among consumers in different threads, make sure the operators are
+ * stateless to avoid race condition
+ */
+fun <T, R> consumeByPool(action: Function1<T, R>): Work<R, Producer<T>> {
+    val channel = newChannel<T>()
+    val parentJob = parentJob()
+    val stats = ProducerStats()
+    val producer = ProducerImpl(channel, parentJob, stats)
+    val producerConsumers = ArrayList<ProducerConsumer<T, R>>(CONSUMER_POOL_SIZE)
+    repeat(CONSUMER_POOL_SIZE) {
+        val consumer = ConsumerImpl(channel, parentJob, stats, action)
+        producerConsumers.add(ProducerConsumer(producer, consumer, stats, consumer))
+    }
+    return ProducerConsumers(producerConsumers)
+}
+
+/**
+ * Create and start a [Producer] whose elements are executed by [pipeline], one at a time like [consumeBy]
+ */
+fun <T> consumeBy(pipeline: Pipeline<T, *>): Producer<T> = pipeline.bind(consumeBy<T, T> { it }).start()
+
+/**
+ * Create and start a [Producer] whose elements are executed by [pipeline] in a pool of consumers like [consumeByPool]
+ */
+fun <T> consumeByPool(pipeline: Pipeline<T, *>): Producer<T> = pipeline.bind(consumeByPool<T, T> { it }).start()
+
+/**
+ * Consume the elements of [source] by the producer [work], like producing them one by one, but the next element is
+ * only taken from [source] when a consumer is ready for it, so the source is never loaded into memory at once. The
+ * worker completes when the source is exhausted and its elements are consumed, and cancelling it closes the producer
+ */
+fun <T> from(source: Iterator<T>, work: Work<*, Producer<T>>): Worker = feedFrom(source, work, SOURCE_PREFETCH)
+
+/**
+ * Consume the elements of [source] by the producer [work], see [from]
+ */
+fun <T> from(source: Sequence<T>, work: Work<*, Producer<T>>): Worker = from(source.iterator(), work)
+
+/**
+ * Consume the lines of [input] by the producer [work], see [from]. The lines are read in background as the consumers
+ * are ready for them, and [input] is closed when the worker completes
+ */
+@JvmOverloads
+fun from(input: InputStream, work: Work<*, Producer<String>>, charset: Charset = Charsets.UTF_8): Worker {
+    val reader = BufferedReader(InputStreamReader(input, charset))
+    return feedFrom(LineIterator(reader), work, SOURCE_PREFETCH, reader)
+}
+
+/**
+ * Consume the lines of the file at [path] by the producer [work], see [from]. The file is read with a single reused
+ * buffer as the consumers are ready for the lines
+ */
+@JvmOverloads
+fun from(path: Path, work: Work<*, Producer<String>>, charset: Charset = Charsets.UTF_8): Worker {
+    val reader = Files.newBufferedReader(path, charset)
+    return feedFrom(LineIterator(reader), work, SOURCE_PREFETCH, reader)
+}
+
+/**
+ * Consume the file at [path] by the producer [work] as read-only [ByteBuffer] regions of about [regionSize] bytes,
+ * mapped in memory so no byte is copied into the heap. Each region ends after a [delimiter], so it only has whole
+ * records, and the regions are mapped as the consumers are ready for them, see [from]
+ */
+@JvmOverloads
+fun fromMappedFile(path: Path, work: Work<*, Producer<ByteBuffer>>, regionSize: Int = DEFAULT_REGION_SIZE,
+                   delimiter: Byte = '\n'.toByte()): Worker {
+    require(regionSize > 0) { "Region size must be positive" }
+    val channel = FileChannel.open(path, StandardOpenOption.READ)
+    return feedFrom(MappedRegionIterator(channel, regionSize, delimiter), work, SOURCE_PREFETCH, channel)
+}
+
+private fun <T> newChannel() = Channel<Envelope<T>>(Channel.UNLIMITED)
+
+/**
+ * The parent job that used to monitor producer/consumer job
+ */
+private fun parentJob(): Job = Job()
+
+
+interface Producer<T> : Manageable<Producer<T>> {
+
+    /**
+     * Return `true` is producer is active. The produced item can be consumed only when the state is active
+     */
+    val isActive: Boolean
+
+    /**
+     * Produce an item that will be consumed by the consumer(s), return `true` if element is added successfully,
+     * `false` if the producer is closed or has error, and no longer accept elements
+     */
+    fun produce(element: T): Boolean
+
+    /**
+     * Produce all the [elements] at once, with one state check and at most one wakeup for each idle consumer, return
+     * how many elements are added. It stops at the first element that is not added, because the producer is closed,
+     * the elements after it are not taken from [elements]
+     */
+    fun produceAll(elements: Iterable<T>): Int
+
+    /**
+     * Produce all the [elements] at once, see [produceAll]
+     */
+    fun produceAll(elements: Array<out T>): Int
+
+    /**
+     * Close this producer job, no more item will be accepted, and the state will be inactive at this point
+     */
+    fun close()
+
+    /**
+     * Return a snapshot of the metrics of this producer and its consumers
+     */
+    fun metrics(): ProducerMetrics
+}
+
+/**
+ * The hooks of the producers created here, used by the Reactive Streams adapters
+ */
+internal interface DrainableProducer<T> : Producer<T> {
+
+    /**
+     * Called from a consumer each time it takes an element
+     */
+    var dequeueListener: (() -> Unit)?
+
+    /**
+     * Stop accepting elements like [close], but keep consuming the elements already produced
+     */
+    fun closeWhenDrained()
+
+    /**
+     * Call [handler] once the producer is closed, and no more element will be consumed
+     */
+    fun invokeOnClose(handler: () -> Unit)
+}
+
+/**
+ * A producer work that can be started with its consumers only taking an element when there is [Demand]
+ */
+internal interface DemandStarter<T> {
+    fun start(demand: Demand): DrainableProducer<T>
+}
+
+private interface Consumer<T> {
+
+    /**
+     * Consume each element, and when the buffer is empty, the queue will be blocked until next item is received, and
+     * execute it with [block] of coroutine code. When [demand] is given, wait for it before taking each element
+     */
+    fun consumeEach(demand: Demand?, block: suspend CoroutineScope.(ReceiveChannel<*>, T) -> Unit): Job
+
+    /**
+     * The job shared by the producer and all its consumers
+     */
+    val parentJob: Job
+}
+
+private class ProducerImpl<T>(private val channel: SendChannel<Envelope<T>>,
+                              private val parentJob: Job,
+                              private val stats: ProducerStats) : DrainableProducer<T> {
+
+    override val isActive: Boolean get() = parentJob.isActive && !channel.isClosedForSend
+
+    override fun produce(element: T): Boolean {
+        if (!parentJob.isActive) {
+            if (!channel.isClosedForSend) {
+                channel.close()
+            }
+            stats.onDrop()
+            return false
+        }
+        val accepted = offer(element, System.nanoTime())
+        if (accepted) stats.onProduce() else stats.onDrop()
+        val event = JfrEvents.PRODUCER_ENQUEUE
+        if (event != null && event.isEnabled) event.commit(accepted, 1)
+        return accepted
+    }
+
+    override fun produceAll(elements: Iterable<T>): Int {
+        return produceAll(elements.iterator(), if (elements is Collection<*>) elements.size else -1)
+    }
+
+    override fun produceAll(elements: Array<out T>): Int = produceAll(elements.iterator(), elements.size)
+
+    /**
+     * @param size: The number of [elements] if it is known, the elements that are not taken from [elements] are only
+     * counted as dropped with it
+     */
+    private fun produceAll(elements: Iterator<T>, size: Int): Int {
+        var accepted = 0
+        var dropped = 0
+        if (parentJob.isActive) {
+            // the elements of a batch share the produce time, a consumer woken by the first element takes the
+            // following ones without suspending again
+            val produceTime = System.nanoTime()
+            while (elements.hasNext()) {
+                if (!offer(elements.next(), produceTime)) {
+                    dropped = 1
+                    break
+                }
+                accepted++
+            }
+        } else if (!channel.isClosedForSend) {
+            channel.close()
+        }
+        if (size >= 0) dropped = size - accepted
+        stats.onProduce(accepted)
+        stats.onDrop(dropped)
+        val event = JfrEvents.PRODUCER_ENQUEUE
+        if (event != null && event.isEnabled) {
+            if (accepted > 0) event.commit(true, accepted)
+            if (dropped > 0) event.commit(false, dropped)
+        }
+        return accepted
+    }
+
+    private fun offer(element: T, produceTime: Long): Boolean {
+        return try {
+            channel.offer(Envelope(element, produceTime))
+        } catch(ignore: Throwable) {
+            false
+        }
+    }
+
+    override fun close() {
+        channel.close()
+        parentJob.cancel()
+    }
+
+    override fun closeWhenDrained() {
+        if (!channel.close()) return
+        // the consumers stop once the channel is empty, the works they started are their children
+        launch(CONTEXT_BG) {
+            parentJob.children.forEach { it.join() }
+            parentJob.cancel()
+        }
+    }
+
+    override fun invokeOnClose(handler: () -> Unit) {
+        parentJob.invokeOnCompletion { handler() }
+    }
+
+    override var dequeueListener: (() -> Unit)?
+        get() = stats.dequeueListener
+        set(value) {
+            stats.dequeueListener = value
+        }
+
+    override fun metrics(): ProducerMetrics = stats.snapshot()
+
+    override fun manageBy(manager: WorkManager): Producer<T> {
+        manager.manageJob(parentJob)
+        return this
+    }
+
+    override fun manageBy(manager: WorkManager, tag: Any): Producer<T> {
+        manager.manageJob(parentJob, tag)
+        return this
+    }
+
+}
+
+private class ConsumerImpl<T, R>(private val channel: ReceiveChannel<Envelope<T>>,
+                                 override val parentJob: Job,
+                                 private val stats: ProducerStats,
+                                 private val action: Function1<T, R>) : Consumer<T>, BaseAction<R>() {
+
+    @Volatile private var element: T? = null
+
+    override val hasCancelHook: Boolean get() = false
+
+    override fun run(): R {
+        element?.let { return action(it) } ?: discontinueExecution()
+    }
+
+    override fun consumeEach(demand: Demand?, block: suspend CoroutineScope.(ReceiveChannel<*>, T) -> Unit): Job {
+        return launch(CONTEXT_BG + parentJob) {
+            while (true) {
+                demand?.acquire()
+                val e = channel.receiveOrNull() ?: break
+                val latency = System.nanoTime() - e.produceTime
+                stats.onDequeue(latency)
+                val event = JfrEvents.PRODUCER_DEQUEUE
+                if (event != null && event.isEnabled) event.commit(latency)
+                element = e.element
+                block(channel, e.element)
+            }
+        }
+    }
+}
+
+/**
+ * This is suitable for single consumer
+ */
+private const val CONSUME_POLICY_ONLY_LAST = 0
+
+/**
+ * This is suitable for multiple consumers
+ */
+private const val CONSUME_POLICY_EACH = 1
+
+
+private class ProducerConsumer<T, R>(private val producer: DrainableProducer<T>,
+                                     private val consumer: Consumer<T>,
+                                     private val stats: ProducerStats,
+                                     action: Action<R>) : BaseWork<R, Producer<T>>(action), DemandStarter<T> {
+
+    var consumePolicy = CONSUME_POLICY_ONLY_LAST
+
+    override fun <U> newWork(action: Action<U>): Work<U, Producer<T>> {
+        return ProducerConsumer(producer, consumer, stats, action)
+    }
+
+    override fun onWorkComplete(exception: Throwable?) {
+        if (exception != null) stats.onFail()
+    }
+
+    override fun start(): Producer<T> {
+        when (consumePolicy) {
+            CONSUME_POLICY_EACH -> consumeEach(null)
+            CONSUME_POLICY_ONLY_LAST -> consumeOnlyLast()
+            else -> throw IllegalArgumentException("Please use either CONSUME_POLICY_EACH or CONSUME_POLICY_ONLY_LAST")
+        }
+        return producer
+    }
+
+    override fun start(demand: Demand): DrainableProducer<T> {
+        // every requested element is delivered, so never skip to the last one
+        consumeEach(demand)
+        return producer
+    }
+
+    private fun consumeOnlyLast(): Job {
+        var internalJob: Job? = null
+        return consumer.consumeEach(null) { channel, _ ->
+            if (channel.isEmpty) {
+                // only consume the last element
+                // but we first need to make sure the current job is cancelled to avoid race condition
+                internalJob?.cancel()
+                stats.onConsume()
+                val startTime = System.nanoTime()
+                // must use the context from the scope, so when the parent job is cancelled, this will be cancelled
+                internalJob = executeWork(coroutineContext, consumer.parentJob).apply {
+                    invokeOnCompletion { stats.onProcessed(System.nanoTime() - startTime) }
+                }
+            } else {
+                // a newer element is already waiting
+                stats.onDrop()
+            }
+        }
+    }
+
+    private fun consumeEach(demand: Demand?): Job {
+        return consumer.consumeEach(demand) { _, _ ->
+            stats.onConsume()
+            val startTime = System.nanoTime()
+            // must use the context from the scope, so when the parent job is cancelled, this will be cancelled
+            executeWork(coroutineContext, consumer.parentJob).join()
+            stats.onProcessed(System.nanoTime() - startTime)
+        }
+    }
+}
+
+private class ProducerConsumers<T, R>(private val consumers: List<ProducerConsumer<T, R>>) : Work<R, Producer<T>>, ChainableWork<R, Producer<T>>, DemandStarter<T> {
+
+    override fun <U> transform(context: CoroutineContexts, action: Function1<R, U>): Work<U, Producer<T>> {
+        return newInstance { transform(context, action) as ProducerConsumer<T, U> }
+    }
+
+    override fun <U> transform(context: NamedContext, action: Function1<R, U>): Work<U, Producer<T>> {
+        return newInstance { transform(context, action) as ProducerConsumer<T, U> }
+    }
+
+    override fun consume(context: CoroutineContexts, action: ConsumeAction<R>): Work<R, Producer<T>> {
+        return newInstance { consume(context, action) as ProducerConsumer<T, R> }
+    }
+
+    override fun consume(context: NamedContext, action: ConsumeAction<R>): Work<R, Producer<T>> {
+        return newInstance { consume(context, action) as ProducerConsumer<T, R> }
+    }
+
+    override fun filter(context: CoroutineContexts, action: FilterAction<R>): Work<R, Producer<T>> {
+        return newInstance { filter(context, action) as ProducerConsumer<T, R> }
+    }
+
+    override fun filter(context: NamedContext, action: FilterAction<R>): Work<R, Producer<T>> {
+        return newInstance { filter(context, action) as ProducerConsumer<T, R> }
+    }
+
+    override fun <U> chain(operator: Function1<Action<R>, Action<U>>): Work<U, Producer<T>> {
+        return newInstance { chain(operator) as ProducerConsumer<T, U> }
+    }
+
+    private inline fun <U> newInstance(block: ProducerConsumer<T, R>.() -> ProducerConsumer<T, U>): ProducerConsumers<T, U> {
+        val list = consumers.map { block(it) }
+        return ProducerConsumers(list)
+    }
+
+    override fun onSuccess(action: ConsumeAction<R>): WorkStarter<R, Producer<T>> {
+        consumers.forEach { it.onSuccess(action) }
+        return this
+    }
+
+    override fun onError(action: ConsumeAction<Throwable>): WorkStarter<R, Producer<T>> {
+        consumers.forEach { it.onError(action) }
+        return this
+    }
+
+    override fun setStartDelay(delay: Long): WorkStarter<R, Producer<T>> {
+        consumers.forEach { it.setStartDelay(delay) }
+        return this
+    }
+
+    override fun setName(name: String): WorkStarter<R, Producer<T>> {
+        consumers.forEach { it.setName(name) }
+        return this
+    }
+
+    override fun setBulkhead(bulkhead: Bulkhead): WorkStarter<R, Producer<T>> {
+        consumers.forEach { it.setBulkhead(bulkhead) }
+        return this
+    }
+
+    override fun setRateLimiter(rateLimiter: RateLimiter): WorkStarter<R, Producer<T>> {
+        consumers.forEach { it.setRateLimiter(rateLimiter) }
+        return this
+    }
+
+    override fun start(): Producer<T> {
+        val producers = ArrayList<Producer<T>>(CONSUMER_POOL_SIZE)
+        consumers.forEach {
+            it.consumePolicy = CONSUME_POLICY_EACH
+            producers.add(it.start())
+        }
+        return ensureOneProducerAndReturn(producers)
+    }
+
+    override fun start(demand: Demand): DrainableProducer<T> {
+        return ensureOneProducerAndReturn(consumers.map { it.start(demand) })
+    }
+
+    /**
+     * Make sure all consumers have the same producer, so they can consume the same pool of items
+     */
+    private fun <P : Producer<T>> ensureOneProducerAndReturn(producers: List<P>): P {
+        val p: P = producers.first()
+        if (producers.any { it !== p }) {
+            p.close()
+            throw IllegalStateException("Can't start properly, internal producer conflicts")
+        }
+        return p
+    }
+}
\ No newline at end of file
@@ -0,0 +1,120 @@
+package com.wenhui.coroutines
+
+/**
+ * Snapshot of the metrics of a [Producer]
+ */
+class ProducerMetrics internal constructor(
+        /**
+         * Number of elements accepted by [Producer.produce]
+         */
+        val producedCount: Long,
+        /**
+         * Number of elements the consumers started to process
+         */
+        val consumedCount: Long,
+        /**
+         * Number of elements rejected by [Producer.produce], or skipped by the consumer because a newer element arrived
+         */
+        val droppedCount: Long,
+        /**
+         * Number of elements whose processing failed with an error
+         */
+        val failedCount: Long,
+        /**
+         * Number of elements waiting in the queue
+         */
+        val backlog: Long,
+        val totalQueueLatencyNanos: Long,
+        val maxQueueLatencyNanos: Long,
+        val totalProcessingTimeNanos: Long,
+        private val dequeuedCount: Long,
+        private val processedCount: Long) {
+
+    /**
+     * Average time an element waited in the queue, from [Producer.produce] until a consumer picked it up
+     */
+    val averageQueueLatencyNanos: Long get() = if (dequeuedCount == 0L) 0 else totalQueueLatencyNanos / dequeuedCount
+
+    /**
+     * Average time to process an element, from the start of the work until it completed
+     */
+    val averageProcessingTimeNanos: Long get() = if (processedCount == 0L) 0 else totalProcessingTimeNanos / processedCount
+
+    override fun toString(): String {
+        return "ProducerMetrics(produced=$producedCount, consumed=$consumedCount, dropped=$droppedCount, " +
+                "failed=$failedCount, backlog=$backlog, avgQueueLatencyNanos=$averageQueueLatencyNanos, " +
+                "avgProcessingTimeNanos=$averageProcessingTimeNanos)"
+    }
+}
+
+/**
+ * Record the metrics of a producer and its consumers, it is shared by all of them
+ */
+internal class ProducerStats {
+
+    private val produced = StripedCounter()
+    private val dequeued = StripedCounter()
+    private val consumed = StripedCounter()
+    private val dropped = StripedCounter()
+    private val failed = StripedCounter()
+    private val processed = StripedCounter()
+    private val queueLatency = StripedCounter()
+    private val processingTime = StripedCounter()
+    private val maxQueueLatency = MaxValue()
+
+    /**
+     * Notified by the consumers after taking each element, see [DrainableProducer.dequeueListener]
+     */
+    @Volatile var dequeueListener: (() -> Unit)? = null
+
+    fun onProduce() = produced.increment()
+
+    fun onProduce(count: Int) {
+        if (count > 0) produced.add(count.toLong())
+    }
+
+    fun onDrop() = dropped.increment()
+
+    fun onDrop(count: Int) {
+        if (count > 0) dropped.add(count.toLong())
+    }
+
+    fun onDequeue(latencyNanos: Long) {
+        dequeued.increment()
+        queueLatency.add(latencyNanos)
+        maxQueueLatency.update(latencyNanos)
+        dequeueListener?.invoke()
+    }
+
+    fun onConsume() = consumed.increment()
+
+    fun onProcessed(timeNanos: Long) {
+        processed.increment()
+        processingTime.add(timeNanos)
+    }
+
+    fun onFail() = failed.increment()
+
+    fun snapshot(): ProducerMetrics {
+        // read the later stages first, so the backlog is never negative, and never counts a consumed element
+        val consumedCount = consumed.sum()
+        val dequeuedCount = dequeued.sum()
+        val producedCount = produced.sum()
+        return ProducerMetrics(
+                producedCount = producedCount,
+                consumedCount = consumedCount,
+                droppedCount = dropped.sum(),
+                failedCount = failed.sum(),
+                backlog = producedCount - dequeuedCount,
+                totalQueueLatencyNanos = queueLatency.sum(),
+                maxQueueLatencyNanos = maxQueueLatency.get(),
+                totalProcessingTimeNanos = processingTime.sum(),
+                dequeuedCount = dequeuedCount,
+                processedCount = processed.sum())
+    }
+}
+
+/**
+ * An element in the producer queue, with the time it was produced
+ */
+internal class Envelope<out T>(val element: T, val produceTime: Long)
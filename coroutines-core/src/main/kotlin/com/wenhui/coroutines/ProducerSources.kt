@@ -0,0 +1,139 @@
+package com.wenhui.coroutines
+
+import kotlinx.coroutines.experimental.CancellationException
+import kotlinx.coroutines.experimental.channels.Channel
+import kotlinx.coroutines.experimental.launch
+import kotlinx.coroutines.experimental.suspendCancellableCoroutine
+import java.io.BufferedReader
+import java.io.Closeable
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Feed the elements of [source] to the consumers of [work], only taking the next element when there are less than
+ * [prefetch] elements waiting in the producer, so a source of any size uses bounded memory. The job completes once
+ * the source is exhausted and all its elements are consumed, and [closeable] is closed when the feeding stops
+ */
+internal fun <T> feedFrom(source: Iterator<T>, work: Work<*, Producer<T>>, prefetch: Int,
+                          closeable: Closeable? = null): Worker {
+    require(work is DemandStarter<*>) { "Only the works of consumeBy() and consumeByPool() can consume a source" }
+    require(prefetch > 0) { "Prefetch must be positive" }
+    val demand = Demand().apply { request(Long.MAX_VALUE) }
+    @Suppress("UNCHECKED_CAST")
+    val producer = (work as DemandStarter<T>).start(demand)
+    val capacity = Capacity(prefetch)
+    producer.dequeueListener = { capacity.release() }
+
+    val job = launch(CONTEXT_BG) {
+        try {
+            while (source.hasNext()) {
+                capacity.acquire()
+                if (!producer.produce(source.next())) throw CancellationException("Producer closed")
+            }
+            producer.closeWhenDrained()
+            suspendCancellableCoroutine<Unit> { continuation ->
+                producer.invokeOnClose { continuation.tryResume(Unit)?.let { continuation.completeResume(it) } }
+            }
+        } catch (e: Throwable) {
+            if (e !is CancellationException) log { "Source of the producer failed: $e" }
+            producer.close()
+            throw e
+        } finally {
+            try {
+                closeable?.close()
+            } catch (ignore: Throwable) {
+            }
+        }
+    }
+    return WorkerImpl(job)
+}
+
+/**
+ * The lines of [reader], read one at a time
+ */
+internal class LineIterator(private val reader: BufferedReader) : Iterator<String> {
+
+    private var nextLine: String? = null
+    private var done = false
+
+    override fun hasNext(): Boolean {
+        if (nextLine == null && !done) {
+            nextLine = reader.readLine()
+            done = nextLine == null
+        }
+        return nextLine != null
+    }
+
+    override fun next(): String {
+        if (!hasNext()) throw NoSuchElementException()
+        val line = nextLine!!
+        nextLine = null
+        return line
+    }
+}
+
+/**
+ * Read-only regions of the file of [channel], each about [regionSize] bytes and ending after a [delimiter], or at the
+ * end of the file. The regions are mapped one by one as they are taken, a record longer than [regionSize] gets a
+ * region of its own
+ */
+internal class MappedRegionIterator(private val channel: FileChannel,
+                                    private val regionSize: Int,
+                                    private val delimiter: Byte) : Iterator<ByteBuffer> {
+
+    private val size = channel.size()
+    private var position = 0L
+
+    override fun hasNext(): Boolean = position < size
+
+    override fun next(): ByteBuffer {
+        if (!hasNext()) throw NoSuchElementException()
+        var length = Math.min(regionSize.toLong(), size - position)
+        while (true) {
+            val region = channel.map(FileChannel.MapMode.READ_ONLY, position, length)
+            val end = if (position + length == size) length.toInt() else lastRecordEnd(region)
+            if (end > 0) {
+                position += end
+                region.limit(end)
+                return region.slice()
+            }
+            // no delimiter in the region, map a larger one, up to the largest buffer
+            if (length == Int.MAX_VALUE.toLong()) throw IOException("Record larger than 2GB at $position")
+            length = Math.min(Math.min(length * 2, Int.MAX_VALUE.toLong()), size - position)
+        }
+    }
+
+    private fun lastRecordEnd(region: ByteBuffer): Int {
+        for (i in region.limit() - 1 downTo 0) {
+            if (region.get(i) == delimiter) return i + 1
+        }
+        return 0
+    }
+}
+
+/**
+ * The free slots of the producer, taken by the single feeder and given back by the consumers
+ */
+private class Capacity(slots: Int) {
+
+    private val free = AtomicInteger(slots)
+    private val signal = Channel<Unit>(Channel.CONFLATED)
+
+    fun release() {
+        free.incrementAndGet()
+        signal.offer(Unit)
+    }
+
+    suspend fun acquire() {
+        while (true) {
+            val current = free.get()
+            if (current == 0) {
+                signal.receive()
+            } else if (free.compareAndSet(current, current - 1)) {
+                return
+            }
+        }
+    }
+}
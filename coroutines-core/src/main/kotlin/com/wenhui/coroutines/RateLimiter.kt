@@ -0,0 +1,103 @@
+package com.wenhui.coroutines
+
+import kotlinx.coroutines.experimental.delay
+import java.util.concurrent.TimeUnit
+
+/**
+ * Limit the rate the works of a group start, with a token bucket of [burst] tokens refilled at [permitsPerSecond].
+ * Set it to a work with [Starter.setRateLimiter], and share the same instance by all the works of the group. For a
+ * producer, each consumed element takes a token.
+ *
+ * A work over the limit waits for its token without holding a thread, the works start in the order they asked for
+ * a token.
+ */
+class RateLimiter @JvmOverloads constructor(val name: String,
+                                            val permitsPerSecond: Double,
+                                            val burst: Int = 1) {
+
+    init {
+        require(permitsPerSecond > 0) { "Permits per second must be positive" }
+        require(burst > 0) { "Burst must be positive" }
+    }
+
+    private val intervalNanos = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond
+    private val lock = Any()
+
+    // Guarded by lock. Negative when tokens are reserved by waiting works
+    private var tokens = burst.toDouble()
+    private var lastRefillTime = System.nanoTime()
+    private var acquired = 0L
+    private var throttled = 0L
+    private var totalWaitNanos = 0L
+    private var maxWaitNanos = 0L
+
+    internal suspend fun acquire() {
+        val waitNanos = reserve()
+        if (waitNanos <= 0) return
+        try {
+            delay(waitNanos, TimeUnit.NANOSECONDS)
+        } catch (e: Throwable) {
+            // Cancelled while waiting, give the token back to the works behind
+            synchronized(lock) { tokens += 1 }
+            throw e
+        }
+    }
+
+    /**
+     * Take a token, and return how long to wait until it is available
+     */
+    private fun reserve(): Long {
+        synchronized(lock) {
+            val now = System.nanoTime()
+            tokens = Math.min(burst.toDouble(), tokens + (now - lastRefillTime) / intervalNanos)
+            lastRefillTime = now
+            tokens -= 1
+            acquired++
+            if (tokens >= 0) return 0
+
+            val waitNanos = (-tokens * intervalNanos).toLong()
+            throttled++
+            totalWaitNanos += waitNanos
+            maxWaitNanos = Math.max(maxWaitNanos, waitNanos)
+            return waitNanos
+        }
+    }
+
+    /**
+     * Return a snapshot of the metrics of this rate limiter
+     */
+    fun stats(): RateLimiterStats {
+        synchronized(lock) {
+            return RateLimiterStats(name, acquired, throttled, totalWaitNanos, maxWaitNanos)
+        }
+    }
+
+    override fun toString() = "RateLimiter(name=$name, permitsPerSecond=$permitsPerSecond, burst=$burst)"
+}
+
+/**
+ * Snapshot of the metrics of a [RateLimiter]
+ */
+class RateLimiterStats internal constructor(
+        val name: String,
+        /**
+         * Number of works that took a token
+         */
+        val acquiredCount: Long,
+        /**
+         * Number of works that had to wait for their token
+         */
+        val throttledCount: Long,
+        /**
+         * Total time the throttled works waited
+         */
+        val totalWaitNanos: Long,
+        val maxWaitNanos: Long) {
+
+    val averageWaitNanos: Long get() = if (throttledCount == 0L) 0 else totalWaitNanos / throttledCount
+
+    override fun toString(): String {
+        return "RateLimiterStats(name=$name, acquired=$acquiredCount, throttled=$throttledCount, " +
+                "avgWaitNanos=$averageWaitNanos, maxWaitNanos=$maxWaitNanos)"
+    }
+}
@@ -0,0 +1,278 @@
+@file:JvmName("ReactiveStreams")
+
+package com.wenhui.coroutines
+
+import kotlinx.coroutines.experimental.CoroutineScope
+import kotlinx.coroutines.experimental.channels.Channel
+import org.reactivestreams.Publisher
+import org.reactivestreams.Subscriber
+import org.reactivestreams.Subscription
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReference
+
+private const val DEFAULT_PREFETCH = 16
+
+/**
+ * A [Producer] whose results are published to a Reactive Streams [Subscriber], see [toPublisher]
+ */
+interface ProducerPublisher<T, R> : Producer<T>, Publisher<R>
+
+/**
+ * Start the producer [work], and publish its results to a single [Subscriber]. The consumers only take an element
+ * from the producer when the subscriber requested a result, until then the elements are kept by the producer.
+ *
+ * An element removed by a filter doesn't use the demand. The subscriber completes when the producer is closed, and
+ * fails with the first error of the work, which also closes the producer.
+ *
+ * NOTE: Requires org.reactivestreams:reactive-streams
+ */
+fun <T, R> toPublisher(work: Work<R, Producer<T>>): ProducerPublisher<T, R> {
+    require(work is DemandStarter<*>) { "Only the works of consumeBy() and consumeByPool() can be published" }
+    return ProducerPublisherImpl(work)
+}
+
+/**
+ * Return a [Subscriber] that produces each element it receives to [producer]. It requests [prefetch] elements first,
+ * then more as the consumers take them, so the producer never keeps more than [prefetch] elements.
+ *
+ * The producer is closed once the elements already produced are consumed when the subscription completes, and
+ * closed right away when it fails.
+ *
+ * NOTE: Requires org.reactivestreams:reactive-streams
+ */
+@JvmOverloads
+fun <T> toSubscriber(producer: Producer<T>, prefetch: Int = DEFAULT_PREFETCH): Subscriber<T> {
+    require(prefetch > 0) { "Prefetch must be positive" }
+    return ProducerSubscriber(producer, prefetch)
+}
+
+/**
+ * The number of requested elements, which consumers take one by one, waiting when there is none
+ */
+internal class Demand {
+
+    private val requested = AtomicLong()
+    private val signal = Channel<Unit>(Channel.CONFLATED)
+
+    fun request(n: Long) {
+        while (true) {
+            val current = requested.get()
+            if (current == Long.MAX_VALUE) return
+            // Long.MAX_VALUE means unbounded, so the sum is capped there
+            val next = if (current + n < 0) Long.MAX_VALUE else current + n
+            if (requested.compareAndSet(current, next)) break
+        }
+        signal.offer(Unit)
+    }
+
+    /**
+     * Give back an acquired element that wasn't delivered
+     */
+    fun release() = request(1)
+
+    suspend fun acquire() {
+        while (true) {
+            val current = requested.get()
+            when {
+                current == Long.MAX_VALUE -> return
+                current == 0L -> signal.receive()
+                requested.compareAndSet(current, current - 1) -> {
+                    // the signal is conflated, pass it on to the next waiting consumer
+                    if (current > 1) signal.offer(Unit)
+                    return
+                }
+            }
+        }
+    }
+}
+
+private class ProducerPublisherImpl<T, R>(work: Work<R, Producer<T>>) : ProducerPublisher<T, R>, DrainableProducer<T>,
+        Subscription {
+
+    val demand = Demand()
+
+    private val lock = Any()
+    private var subscribed = false
+    // Dropped once terminated, so a cancelled subscriber can be collected
+    private var subscriber: Subscriber<in R>? = null
+    private var terminated = false
+    private var closed = false
+
+    private val producer: DrainableProducer<T>
+
+    init {
+        @Suppress("UNCHECKED_CAST")
+        val publishWork = (work as ChainableWork<R, Producer<T>>).chain { PublishAction(it, this) }
+        producer = (publishWork as DemandStarter<T>).start(demand)
+        producer.invokeOnClose { complete() }
+    }
+
+    override val isActive: Boolean get() = producer.isActive
+
+    override fun produce(element: T): Boolean = producer.produce(element)
+
+    override fun produceAll(elements: Iterable<T>): Int = producer.produceAll(elements)
+
+    override fun produceAll(elements: Array<out T>): Int = producer.produceAll(elements)
+
+    override fun close() = producer.close()
+
+    override fun metrics(): ProducerMetrics = producer.metrics()
+
+    override var dequeueListener: (() -> Unit)?
+        get() = producer.dequeueListener
+        set(value) {
+            producer.dequeueListener = value
+        }
+
+    override fun closeWhenDrained() = producer.closeWhenDrained()
+
+    override fun invokeOnClose(handler: () -> Unit) = producer.invokeOnClose(handler)
+
+    override fun manageBy(manager: WorkManager): Producer<T> {
+        producer.manageBy(manager)
+        return this
+    }
+
+    override fun manageBy(manager: WorkManager, tag: Any): Producer<T> {
+        producer.manageBy(manager, tag)
+        return this
+    }
+
+    override fun subscribe(subscriber: Subscriber<in R>?) {
+        subscriber ?: throw NullPointerException("Subscriber is null")
+        synchronized(lock) {
+            if (subscribed) {
+                subscriber.onSubscribe(CancelledSubscription)
+                subscriber.onError(IllegalStateException("Only one subscriber is allowed"))
+                return
+            }
+            subscribed = true
+            this.subscriber = subscriber
+            subscriber.onSubscribe(this)
+            if (closed) complete()
+        }
+    }
+
+    override fun request(n: Long) {
+        if (n <= 0) {
+            fail(IllegalArgumentException("Rule 3.9: non-positive subscription request of $n elements"))
+        } else {
+            demand.request(n)
+        }
+    }
+
+    override fun cancel() {
+        synchronized(lock) {
+            terminated = true
+            subscriber = null
+        }
+        producer.close()
+    }
+
+    fun emit(result: R) {
+        synchronized(lock) {
+            if (!terminated) subscriber?.onNext(result)
+        }
+    }
+
+    fun fail(exception: Throwable) {
+        val subscriber = synchronized(lock) {
+            if (terminated) return
+            terminated = true
+            subscriber.also { subscriber = null }
+        }
+        // close first, so the producer is inactive when the subscriber is notified
+        producer.close()
+        subscriber?.onError(exception)
+    }
+
+    private fun complete() {
+        synchronized(lock) {
+            closed = true
+            val subscriber = subscriber
+            if (terminated || subscriber == null) return
+            terminated = true
+            this.subscriber = null
+            subscriber.onComplete()
+        }
+    }
+}
+
+private class PublishAction<R>(private val action: Action<R>,
+                               private val publisher: ProducerPublisherImpl<*, R>) : BaseSuspendableAction<R>() {
+
+    override suspend fun runAsync(scope: CoroutineScope): R {
+        val result = try {
+            action.runAsync(scope)
+        } catch (exception: Throwable) {
+            if (!shouldReportException(exception)) {
+                publisher.demand.release()
+            } else if (scope.isActive) {
+                publisher.fail(exception)
+            }
+            throw exception
+        }
+        publisher.emit(result)
+        return result
+    }
+}
+
+private object CancelledSubscription : Subscription {
+    override fun request(n: Long) {}
+
+    override fun cancel() {}
+}
+
+private class ProducerSubscriber<T>(private val producer: Producer<T>,
+                                    private val prefetch: Int) : Subscriber<T> {
+
+    private val subscription = AtomicReference<Subscription>()
+    private val drainable = producer as? DrainableProducer<T>
+    // Elements taken by the consumers since the last request
+    private val taken = AtomicInteger()
+    // The subscription is over once it completed or failed, and must not be cancelled then
+    @Volatile private var terminated = false
+
+    override fun onSubscribe(subscription: Subscription?) {
+        subscription ?: throw NullPointerException("Subscription is null")
+        if (!this.subscription.compareAndSet(null, subscription)) {
+            subscription.cancel()
+            return
+        }
+        drainable?.dequeueListener = { onTaken() }
+        drainable?.invokeOnClose { if (!terminated) subscription.cancel() }
+        subscription.request(prefetch.toLong())
+    }
+
+    override fun onNext(element: T?) {
+        element ?: throw NullPointerException("Element is null")
+        if (!producer.produce(element)) {
+            subscription.get()?.cancel()
+            return
+        }
+        // Without the hooks, request the next element as soon as one is accepted
+        if (drainable == null) onTaken()
+    }
+
+    override fun onError(exception: Throwable?) {
+        exception ?: throw NullPointerException("Exception is null")
+        log { "Subscription of the producer failed: $exception" }
+        terminated = true
+        producer.close()
+    }
+
+    override fun onComplete() {
+        terminated = true
+        if (drainable != null) drainable.closeWhenDrained() else producer.close()
+    }
+
+    private fun onTaken() {
+        // Request in batches of half the prefetch, to save round trips to the publisher
+        val count = taken.incrementAndGet()
+        if (count >= Math.max(1, prefetch / 2) && taken.compareAndSet(count, 0)) {
+            subscription.get()?.request(count.toLong())
+        }
+    }
+}
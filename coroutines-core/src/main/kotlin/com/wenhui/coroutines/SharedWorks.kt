@@ -0,0 +1,183 @@
+package com.wenhui.coroutines
+
+import com.wenhui.coroutines.functions.ConsumeAction
+import kotlinx.coroutines.experimental.Job
+import kotlinx.coroutines.experimental.delay
+import kotlinx.coroutines.experimental.launch
+
+/**
+ * Keep the result of a shared work until the shared work is cancelled
+ */
+const val RETAIN_FOREVER = Long.MAX_VALUE
+
+/**
+ * A started work whose single result is shared by all the subscribers. Subscribers can be added before or after
+ * the work completes, and the result is replayed to each of them on the UI thread.
+ *
+ * Once the retention time after completion is over, the result is released, and the next subscriber starts a new
+ * execution of the work.
+ *
+ * Once it is cancelled, the subscribers are dropped without a callback, and the ones added later are ignored.
+ */
+interface SharedWork<T> : Worker {
+
+    /**
+     * Callback when execution succeeded, or immediately when the result is already available
+     */
+    fun onSuccess(action: ConsumeAction<T>): SharedWork<T>
+
+    /**
+     * [Kotlin version] Callback when execution succeeded, or immediately when the result is already available
+     */
+    fun onSuccess(action: KConsumeAction<T>): SharedWork<T> = onSuccess(KConsumeActionWrapper(action))
+
+    /**
+     * Callback when there is exception, or immediately when the work already failed
+     */
+    fun onError(action: ConsumeAction<Throwable>): SharedWork<T>
+
+    /**
+     * [Kotlin version] Callback when there is exception, or immediately when the work already failed
+     */
+    fun onError(action: KConsumeAction<Throwable>): SharedWork<T> = onError(KConsumeActionWrapper(action))
+}
+
+private const val STATE_RUNNING = 0
+private const val STATE_SUCCESS = 1
+private const val STATE_ERROR = 2
+private const val STATE_DISCONTINUED = 3
+private const val STATE_RELEASED = 4
+
+internal class SharedWorkImpl<T>(private val action: Action<T>,
+                                 private val retention: Long) : SharedWork<T> {
+
+    init {
+        require(retention >= 0) { "Retention must not be negative" }
+    }
+
+    // Parent of all the executions, so all of them can be cancelled together
+    private val parentJob = Job()
+    private val lock = Any()
+
+    @Volatile private var job: Job
+    private var state = STATE_RUNNING
+    private var result: T? = null
+    private var error: Throwable? = null
+    private var successActions = ArrayList<ConsumeAction<T>>(2)
+    private var errorActions = ArrayList<ConsumeAction<Throwable>>(2)
+
+    init {
+        job = execute()
+        // A cancelled work never delivers, don't hold the subscribers, they often capture an Activity. It also covers
+        // a cancel from a WorkManager, once the running execution stops
+        parentJob.invokeOnCompletion { dropSubscribers() }
+    }
+
+    override val isCompleted: Boolean get() = parentJob.isCancelled || job.isCompleted
+
+    override fun cancel(): Boolean {
+        val cancelled = parentJob.cancel()
+        dropSubscribers()
+        return cancelled
+    }
+
+    override fun manageBy(manager: WorkManager): Worker {
+        manager.manageJob(parentJob)
+        return this
+    }
+
+    override fun manageBy(manager: WorkManager, tag: Any): Worker {
+        manager.manageJob(parentJob, tag)
+        return this
+    }
+
+    override fun onSuccess(action: ConsumeAction<T>): SharedWork<T> {
+        synchronized(lock) {
+            if (parentJob.isCancelled) return this
+            when (state) {
+                STATE_RUNNING -> successActions.add(action)
+                STATE_SUCCESS -> deliver(action, result)
+                STATE_RELEASED -> {
+                    successActions.add(action)
+                    restart()
+                }
+                else -> Unit // failed or discontinued, there is no result to deliver
+            }
+        }
+        return this
+    }
+
+    override fun onError(action: ConsumeAction<Throwable>): SharedWork<T> {
+        synchronized(lock) {
+            if (parentJob.isCancelled) return this
+            when (state) {
+                STATE_RUNNING -> errorActions.add(action)
+                STATE_ERROR -> deliver(action, error)
+                STATE_RELEASED -> {
+                    errorActions.add(action)
+                    restart()
+                }
+                else -> Unit // succeeded or discontinued, there is no error to deliver
+            }
+        }
+        return this
+    }
+
+    private fun restart() {
+        state = STATE_RUNNING
+        job = execute()
+    }
+
+    private fun execute(): Job = launch(CONTEXT_BG, parent = parentJob) {
+        try {
+            val response = action.runAsync(this)
+            if (isActive) complete(STATE_SUCCESS, response, null)
+        } catch (exception: Throwable) {
+            if (isActive) {
+                complete(if (shouldReportException(exception)) STATE_ERROR else STATE_DISCONTINUED, null, exception)
+            }
+        }
+    }
+
+    private fun complete(newState: Int, response: T?, exception: Throwable?) {
+        synchronized(lock) {
+            state = newState
+            result = response
+            error = exception
+            when (newState) {
+                STATE_SUCCESS -> successActions.forEach { deliver(it, response) }
+                STATE_ERROR -> errorActions.forEach { deliver(it, exception) }
+            }
+            // All the subscribers got the result, no need to hold them any more
+            successActions = ArrayList(2)
+            errorActions = ArrayList(2)
+        }
+
+        if (retention != RETAIN_FOREVER) {
+            launch(CONTEXT_BG, parent = parentJob) {
+                delay(retention)
+                release()
+            }
+        }
+    }
+
+    private fun dropSubscribers() {
+        synchronized(lock) {
+            successActions.clear()
+            errorActions.clear()
+        }
+    }
+
+    private fun release() {
+        synchronized(lock) {
+            state = STATE_RELEASED
+            result = null
+            error = null
+        }
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun <R> deliver(action: ConsumeAction<R>, value: Any?) {
+        launch(CONTEXT_UI, parent = parentJob) { action(value as R) }
+    }
+}
@@ -0,0 +1,255 @@
+package com.wenhui.coroutines
+
+import kotlinx.coroutines.experimental.CancellableContinuation
+import kotlinx.coroutines.experimental.CoroutineDispatcher
+import kotlinx.coroutines.experimental.Delay
+import kotlinx.coroutines.experimental.asCoroutineDispatcher
+import java.util.concurrent.Executor
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import kotlin.coroutines.experimental.CoroutineContext
+
+/**
+ * A counter that spreads the updates from different threads into different cells, so threads don't contend on the
+ * same cache line. Reading the sum is more expensive, it is meant for metrics that are updated much more often
+ * than they are read.
+ */
+internal class StripedCounter {
+
+    private val cells = AtomicLongArray(STRIPES * CELL_PADDING)
+
+    fun increment() = add(1)
+
+    fun add(delta: Long) {
+        val index = (Thread.currentThread().id.toInt() and STRIPE_MASK) * CELL_PADDING
+        cells.addAndGet(index, delta)
+    }
+
+    fun sum(): Long {
+        var sum = 0L
+        for (i in 0 until STRIPES) {
+            sum += cells.get(i * CELL_PADDING)
+        }
+        return sum
+    }
+
+    private companion object {
+        // At least twice the number of CPUs, and a power of 2 so a stripe can be picked with a mask
+        val STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) shl 1
+        val STRIPE_MASK = STRIPES - 1
+        // 8 longs for 64 bytes, keep each cell in its own cache line
+        const val CELL_PADDING = 8
+    }
+}
+
+/**
+ * Keep the max of the values, the value is only written when there is a new max
+ */
+internal class MaxValue {
+
+    private val max = AtomicLong()
+
+    fun update(value: Long) {
+        var current = max.get()
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get()
+        }
+    }
+
+    fun get() = max.get()
+}
+
+/**
+ * Snapshot of the statistics of a dispatcher. The task counters are only collected when
+ * [Configuration.Builder.collectStats] is enabled, the pool figures are only available when the executor is a
+ * [ThreadPoolExecutor], and `-1` otherwise.
+ */
+class DispatcherStats internal constructor(
+        val name: String,
+        val submittedTasks: Long,
+        val startedTasks: Long,
+        val completedTasks: Long,
+        val rejectedTasks: Long,
+        val activeTasks: Long,
+        val queuedTasks: Long,
+        val totalQueueTimeNanos: Long,
+        val maxQueueTimeNanos: Long,
+        val totalRunTimeNanos: Long,
+        val poolSize: Int,
+        val largestPoolSize: Int,
+        val maximumPoolSize: Int,
+        val activeThreads: Int,
+        val executorQueueSize: Int) {
+
+    /**
+     * Average time a task waited in the executor queue before it started running. The queue time is recorded when a
+     * task starts, so it is averaged over the started tasks, including the ones still running
+     */
+    val averageQueueTimeNanos: Long get() = if (startedTasks == 0L) 0 else totalQueueTimeNanos / startedTasks
+
+    override fun toString(): String {
+        return "DispatcherStats(name=$name, submitted=$submittedTasks, started=$startedTasks, " +
+                "completed=$completedTasks, rejected=$rejectedTasks, active=$activeTasks, queued=$queuedTasks, " +
+                "avgQueueTimeNanos=$averageQueueTimeNanos, maxQueueTimeNanos=$maxQueueTimeNanos, " +
+                "poolSize=$poolSize, activeThreads=$activeThreads)"
+    }
+}
+
+/**
+ * The MBean interface of a dispatcher, registered as `com.wenhui.coroutines:type=Dispatcher,name=<name>` when
+ * [Configuration.Builder.publishStatsMBean] is enabled
+ */
+interface DispatcherStatsMXBean {
+    val submittedTasks: Long
+    val startedTasks: Long
+    val completedTasks: Long
+    val rejectedTasks: Long
+    val activeTasks: Long
+    val queuedTasks: Long
+    val averageQueueTimeNanos: Long
+    val maxQueueTimeNanos: Long
+    val totalRunTimeNanos: Long
+    val poolSize: Int
+    val largestPoolSize: Int
+    val maximumPoolSize: Int
+    val activeThreads: Int
+    val executorQueueSize: Int
+}
+
+/**
+ * Collect the statistics of the tasks executed by a dispatcher
+ */
+internal class DispatcherMetrics(private val name: String, private val executor: Executor) {
+
+    private val submitted = StripedCounter()
+    private val started = StripedCounter()
+    private val completed = StripedCounter()
+    private val rejected = StripedCounter()
+    private val queueTime = StripedCounter()
+    private val runTime = StripedCounter()
+    private val maxQueueTime = MaxValue()
+
+    fun onSubmit() = submitted.increment()
+
+    fun onReject() = rejected.increment()
+
+    fun onStart(queueNanos: Long) {
+        started.increment()
+        queueTime.add(queueNanos)
+        maxQueueTime.update(queueNanos)
+    }
+
+    fun onComplete(runNanos: Long) {
+        completed.increment()
+        runTime.add(runNanos)
+    }
+
+    fun snapshot(): DispatcherStats {
+        // read the later stages first, so the derived counts are never negative
+        val completedCount = completed.sum()
+        val startedCount = started.sum()
+        val rejectedCount = rejected.sum()
+        val submittedCount = submitted.sum()
+        val pool = executor as? ThreadPoolExecutor
+        return DispatcherStats(
+                name = name,
+                submittedTasks = submittedCount,
+                startedTasks = startedCount,
+                completedTasks = completedCount,
+                rejectedTasks = rejectedCount,
+                activeTasks = startedCount - completedCount,
+                queuedTasks = Math.max(0, submittedCount - startedCount - rejectedCount),
+                totalQueueTimeNanos = queueTime.sum(),
+                maxQueueTimeNanos = maxQueueTime.get(),
+                totalRunTimeNanos = runTime.sum(),
+                poolSize = pool?.poolSize ?: -1,
+                largestPoolSize = pool?.largestPoolSize ?: -1,
+                maximumPoolSize = pool?.maximumPoolSize ?: -1,
+                activeThreads = pool?.activeCount ?: -1,
+                executorQueueSize = pool?.queue?.size ?: -1)
+    }
+}
+
+/**
+ * A dispatcher that records the queue time and run time of each task executed by [executor]
+ */
+internal class InstrumentedDispatcher(private val executor: Executor,
+                                      private val metrics: DispatcherMetrics) : CoroutineDispatcher(), Delay {
+
+    // Delayed resumes are scheduled by the plain dispatcher, and dispatched back through this dispatcher
+    private val delay = executor.asCoroutineDispatcher() as Delay
+
+    override fun dispatch(context: CoroutineContext, block: Runnable) {
+        metrics.onSubmit()
+        try {
+            executor.execute(TimedTask(block, metrics, System.nanoTime()))
+        } catch (e: RejectedExecutionException) {
+            metrics.onReject()
+            throw e
+        }
+    }
+
+    override fun scheduleResumeAfterDelay(time: Long, unit: TimeUnit, continuation: CancellableContinuation<Unit>) {
+        delay.scheduleResumeAfterDelay(time, unit, continuation)
+    }
+
+    override fun invokeOnTimeout(time: Long, unit: TimeUnit, block: Runnable) = delay.invokeOnTimeout(time, unit, block)
+
+    override fun toString() = executor.toString()
+}
+
+private class TimedTask(private val block: Runnable,
+                        private val metrics: DispatcherMetrics,
+                        private val submitTime: Long) : Runnable {
+    override fun run() {
+        val startTime = System.nanoTime()
+        metrics.onStart(startTime - submitTime)
+        try {
+            block.run()
+        } finally {
+            metrics.onComplete(System.nanoTime() - startTime)
+        }
+    }
+}
+
+private class DispatcherStatsBean(private val metrics: DispatcherMetrics) : DispatcherStatsMXBean {
+    override val submittedTasks get() = metrics.snapshot().submittedTasks
+    override val startedTasks get() = metrics.snapshot().startedTasks
+    override val completedTasks get() = metrics.snapshot().completedTasks
+    override val rejectedTasks get() = metrics.snapshot().rejectedTasks
+    override val activeTasks get() = metrics.snapshot().activeTasks
+    override val queuedTasks get() = metrics.snapshot().queuedTasks
+    override val averageQueueTimeNanos get() = metrics.snapshot().averageQueueTimeNanos
+    override val maxQueueTimeNanos get() = metrics.snapshot().maxQueueTimeNanos
+    override val totalRunTimeNanos get() = metrics.snapshot().totalRunTimeNanos
+    override val poolSize get() = metrics.snapshot().poolSize
+    override val largestPoolSize get() = metrics.snapshot().largestPoolSize
+    override val maximumPoolSize get() = metrics.snapshot().maximumPoolSize
+    override val activeThreads get() = metrics.snapshot().activeThreads
+    override val executorQueueSize get() = metrics.snapshot().executorQueueSize
+}
+
+/**
+ * Register the MBean of the dispatcher to the platform MBean server, return `false` if JMX is not available, e.g.
+ * on Android.
+ *
+ * JMX is accessed by reflection, since javax.management is not part of the Android SDK
+ */
+internal fun registerStatsMBean(name: String, metrics: DispatcherMetrics): Boolean {
+    return try {
+        val server = Class.forName("java.lang.management.ManagementFactory").getMethod("getPlatformMBeanServer").invoke(null)
+        val objectNameClass = Class.forName("javax.management.ObjectName")
+        val objectName = objectNameClass.getConstructor(String::class.java)
+                .newInstance("com.wenhui.coroutines:type=Dispatcher,name=$name")
+        Class.forName("javax.management.MBeanServer")
+                .getMethod("registerMBean", Any::class.java, objectNameClass)
+                .invoke(server, DispatcherStatsBean(metrics), objectName)
+        true
+    } catch (e: Exception) {
+        log { "Can't register stats MBean: $e" }
+        false
+    }
+}
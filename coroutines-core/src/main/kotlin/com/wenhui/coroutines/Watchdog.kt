@@ -0,0 +1,204 @@
+package com.wenhui.coroutines
+
+import kotlinx.coroutines.experimental.Job
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import kotlin.coroutines.experimental.AbstractCoroutineContextElement
+import kotlin.coroutines.experimental.CoroutineContext
+
+/**
+ * Get notified when a work runs longer than the threshold, register it with [Configuration.Builder.watchdog].
+ *
+ * NOTE: this is called from the watchdog thread
+ */
+interface WatchdogListener {
+
+    /**
+     * Called once for each work that is still running after the threshold
+     */
+    fun onLongRunningWork(work: ActiveWorkInfo)
+}
+
+/**
+ * Snapshot of a running work
+ */
+class ActiveWorkInfo internal constructor(
+        /**
+         * The name set by [Starter.setName], or `null` if there is none
+         */
+        val name: String?,
+        /**
+         * Time since the work got a background thread, after the start delay
+         */
+        val ageMillis: Long,
+        /**
+         * The operator stage it is running, 0 for the source of the work
+         */
+        val stage: Int,
+        /**
+         * The thread running the work, or `null` if the work is waiting for a thread between stages
+         */
+        val threadName: String?,
+        /**
+         * Stack sample of [threadName] taken with the snapshot, empty if there is no thread
+         */
+        val stackTrace: List<StackTraceElement>) {
+
+    override fun toString(): String {
+        val builder = StringBuilder()
+        builder.append("Work(name=").append(name).append(", age=").append(ageMillis).append("ms, stage=")
+                .append(stage).append(", thread=").append(threadName).append(')')
+        stackTrace.forEach { builder.append("\n\tat ").append(it) }
+        return builder.toString()
+    }
+}
+
+/**
+ * Bookkeeping of a running work, it is only added to the coroutine context when there is a watchdog. It is also the
+ * node of the registry of the running works, so a work costs only this object.
+ */
+internal class ActiveWork(private val name: String?,
+                          private val owner: Job?) : AbstractCoroutineContextElement(ActiveWork) {
+
+    companion object Key : CoroutineContext.Key<ActiveWork>
+
+    // Guarded by the registry lock
+    internal var prev: ActiveWork? = null
+    internal var next: ActiveWork? = null
+
+    private var job: Job? = null
+    private var startTime = 0L
+    @Volatile private var thread: Thread? = null
+    @Volatile private var stage = 0
+    @Volatile internal var reported = false
+
+    /**
+     * The work got a thread and its source starts running
+     */
+    fun begin(job: Job) {
+        this.job = job
+        startTime = System.nanoTime()
+        thread = Thread.currentThread()
+        ActiveWorks.add(this)
+    }
+
+    fun end() {
+        thread = null
+        ActiveWorks.remove(this)
+    }
+
+    fun beginStage(stage: Int) {
+        this.stage = stage
+        thread = Thread.currentThread()
+    }
+
+    fun endStage() {
+        thread = null
+    }
+
+    fun ageNanos() = System.nanoTime() - startTime
+
+    /**
+     * Return `true` if the work is [managed][WorkManager.manageJob] by one of [jobs], directly or through its owner
+     */
+    fun isManagedBy(jobs: Collection<Job>) = jobs.contains(job) || (owner != null && jobs.contains(owner))
+
+    fun snapshot(): ActiveWorkInfo {
+        val thread = thread
+        return ActiveWorkInfo(name = name,
+                ageMillis = TimeUnit.NANOSECONDS.toMillis(ageNanos()),
+                stage = stage,
+                threadName = thread?.name,
+                stackTrace = thread?.stackTrace?.asList() ?: emptyList())
+    }
+}
+
+/**
+ * Registry of the running works, a doubly linked list through the [ActiveWork] nodes
+ */
+internal object ActiveWorks {
+
+    private val lock = Any()
+    private var head: ActiveWork? = null
+
+    fun add(work: ActiveWork) {
+        synchronized(lock) {
+            work.next = head
+            head?.prev = work
+            head = work
+        }
+        startWatchdog()
+    }
+
+    fun remove(work: ActiveWork) {
+        synchronized(lock) {
+            val prev = work.prev
+            val next = work.next
+            if (prev == null) {
+                // Only unlink the head if it is this work, it may have been removed already
+                if (head === work) head = next
+            } else {
+                prev.next = next
+            }
+            next?.prev = prev
+            work.prev = null
+            work.next = null
+        }
+    }
+
+    fun toList(): List<ActiveWork> {
+        val works = ArrayList<ActiveWork>()
+        synchronized(lock) {
+            var node = head
+            while (node != null) {
+                works.add(node)
+                node = node.next
+            }
+        }
+        return works
+    }
+
+    @Volatile private var scheduler: ScheduledExecutorService? = null
+
+    private fun startWatchdog() {
+        if (scheduler != null) return
+        val watchdog = getSingletonConfig().watchdog ?: return
+        synchronized(this) {
+            if (scheduler != null) return
+            // A thread of its own, the watchdog must keep running when the background pool is saturated
+            val executor = Executors.newSingleThreadScheduledExecutor { target ->
+                Thread(target, "CoroutinesAdapter-Watchdog").apply { isDaemon = true }
+            }
+            val period = Math.max(10L, watchdog.thresholdMillis / 2)
+            executor.scheduleWithFixedDelay({ check(watchdog) }, period, period, TimeUnit.MILLISECONDS)
+            scheduler = executor
+        }
+    }
+
+    /**
+     * For testing
+     */
+    fun stopWatchdog() {
+        synchronized(this) {
+            scheduler?.shutdownNow()
+            scheduler = null
+        }
+    }
+
+    private fun check(watchdog: Watchdog) {
+        val thresholdNanos = TimeUnit.MILLISECONDS.toNanos(watchdog.thresholdMillis)
+        toList().forEach {
+            if (!it.reported && it.ageNanos() >= thresholdNanos) {
+                it.reported = true
+                try {
+                    watchdog.listener.onLongRunningWork(it.snapshot())
+                } catch (e: Throwable) {
+                    log { "Watchdog listener failed: $e" }
+                }
+            }
+        }
+    }
+}
+
+internal class Watchdog(val thresholdMillis: Long, val listener: WatchdogListener)
@@ -0,0 +1,335 @@
+package com.wenhui.coroutines
+
+import com.wenhui.coroutines.functions.ConsumeAction
+import kotlinx.coroutines.experimental.CoroutineStart
+import kotlinx.coroutines.experimental.Job
+import kotlinx.coroutines.experimental.delay
+import kotlinx.coroutines.experimental.launch
+import kotlin.coroutines.experimental.CoroutineContext
+import kotlin.coroutines.experimental.EmptyCoroutineContext
+
+
+// Kotlin doesn't support java SAM type conversion, this is to workaround that issue: https://discuss.kotlinlang.org/t/kotlin-and-sam-interface-with-two-parameters/293/18
+internal typealias KConsumeAction<T> = (T) -> Unit
+internal class KConsumeActionWrapper<T>(private val action: KConsumeAction<T>) : ConsumeAction<T> {
+    override fun invoke(item: T) = action(item)
+}
+
+internal typealias FilterAction<T> = (T) -> Boolean
+
+
+/**
+ * An object that doing all the work and deliver the result back to UI thread. To start the work, [start] must be called
+ */
+interface Work<T, S> : Operator<T, S>, WorkStarter<T, S>
+
+
+interface WorkStarter<T, S> : CompleteNotifier<T, S>, Starter<T, S>
+
+
+interface Operator<T, S> {
+    /**
+     * Transform a source from type T to type R in background thread
+     */
+    fun <U> transform(action: Function1<T, U>): Work<U, S> = transform(CoroutineContexts.BACKGROUND, action)
+
+    /**
+     * Transform a source from type T to type R
+     * @param context: The context where is transformation will be executed
+     */
+    fun <U> transform(context: CoroutineContexts, action: Function1<T, U>): Work<U, S>
+
+    /**
+     * Transform a source from type T to type R in a context registered in the [Configuration]
+     */
+    fun <U> transform(context: NamedContext, action: Function1<T, U>): Work<U, S>
+
+    /**
+     * Consume the item, by default it is running in the background
+     */
+    fun consume(action: ConsumeAction<T>): Work<T, S> = consume(CoroutineContexts.BACKGROUND, action)
+
+    /**
+     *  @param context: The context where the consume action will be executed
+     */
+    fun consume(context: CoroutineContexts, action: ConsumeAction<T>): Work<T, S>
+
+    /**
+     * Kotlin specific version of consume
+     */
+    fun consume(context: CoroutineContexts = CoroutineContexts.BACKGROUND, action: KConsumeAction<T>): Work<T, S>
+            = consume(context, KConsumeActionWrapper(action))
+
+    /**
+     * Consume the item in a context registered in the [Configuration]
+     */
+    fun consume(context: NamedContext, action: ConsumeAction<T>): Work<T, S>
+
+    /**
+     * Kotlin specific version of consume in a context registered in the [Configuration]
+     */
+    fun consume(context: NamedContext, action: KConsumeAction<T>): Work<T, S> = consume(context, KConsumeActionWrapper(action))
+
+    /**
+     * Filter an item in background thread, return `true` is the item is valid, `false` to ignore the item
+     */
+    fun filter(action: FilterAction<T>): Work<T, S> = filter(CoroutineContexts.BACKGROUND, action)
+
+    /**
+     * Filter an item, return `true` is the item is valid, `false` to ignore the item
+     * @param context: The context where the filter action will be executed
+     */
+    fun filter(context: CoroutineContexts, action: FilterAction<T>): Work<T, S>
+
+    /**
+     * Filter an item in a context registered in the [Configuration]
+     */
+    fun filter(context: NamedContext, action: FilterAction<T>): Work<T, S>
+}
+
+
+interface CompleteNotifier<T, S> {
+
+    /**
+     * Callback when execution succeeded
+     */
+    fun onSuccess(action: ConsumeAction<T>): WorkStarter<T, S>
+
+    /**
+     * [Kotlin version] Callback when execution succeeded
+     */
+    fun onSuccess(action: KConsumeAction<T>): WorkStarter<T, S> = onSuccess(KConsumeActionWrapper(action))
+
+    /**
+     * Callback when there is exception
+     */
+    fun onError(action: ConsumeAction<Throwable>): WorkStarter<T, S>
+
+    /**
+     * [Kotlin version] Callback when there is exception
+     */
+    fun onError(action: KConsumeAction<Throwable>): WorkStarter<T, S> = onError(KConsumeActionWrapper(action))
+}
+
+/**
+ * `S` The return type after [start], should normally allow the work to be cancel
+ */
+interface Starter<T, S> {
+
+    fun setStartDelay(delay: Long): WorkStarter<T, S>
+
+    /**
+     * Name the work, so it can be identified by a [WorkTracer]
+     */
+    fun setName(name: String): WorkStarter<T, S>
+
+    /**
+     * Limit the concurrency of the work together with the other works of the [bulkhead]
+     */
+    fun setBulkhead(bulkhead: Bulkhead): WorkStarter<T, S>
+
+    /**
+     * Limit the start rate of the work together with the other works of the [rateLimiter]
+     */
+    fun setRateLimiter(rateLimiter: RateLimiter): WorkStarter<T, S>
+
+    /**
+     * This must be called to start the work
+     */
+    fun start(): S
+}
+
+/**
+ * A [Work] that allows an internal [Action] to be chained after its current action, used by operators that can't be
+ * expressed as a plain function, e.g. [parallelMap]
+ */
+internal interface ChainableWork<T, S> {
+    fun <U> chain(operator: Function1<Action<T>, Action<U>>): Work<U, S>
+}
+
+/**
+ * Base worker that doing all the essential works
+ */
+internal abstract class BaseWork<T, S>(private val action: Action<T>) : WorkLauncher<T>(), Work<T, S>,
+        ChainableWork<T, S> {
+
+    override fun <U> transform(context: CoroutineContexts, action: Function1<T, U>): Work<U, S> {
+        return newWork(Transformer(this.action, context.context, action))
+    }
+
+    override fun <U> transform(context: NamedContext, action: Function1<T, U>): Work<U, S> {
+        return newWork(Transformer(this.action, context.context, action))
+    }
+
+    override fun consume(context: CoroutineContexts, action: ConsumeAction<T>): Work<T, S> {
+        return newWork(User(this.action, context.context, action))
+    }
+
+    override fun consume(context: NamedContext, action: ConsumeAction<T>): Work<T, S> {
+        return newWork(User(this.action, context.context, action))
+    }
+
+    override fun filter(context: CoroutineContexts, action: FilterAction<T>): Work<T, S> {
+        return newWork(Filter(this.action, context.context, action))
+    }
+
+    override fun filter(context: NamedContext, action: FilterAction<T>): Work<T, S> {
+        return newWork(Filter(this.action, context.context, action))
+    }
+
+    override fun <U> chain(operator: Function1<Action<T>, Action<U>>): Work<U, S> = newWork(operator(action))
+
+    /**
+     * Create a new instance of a Work, most likely, it is a new instance of itself
+     */
+    protected abstract fun <R> newWork(action: Action<R>): Work<R, S>
+
+    override fun onSuccess(action: ConsumeAction<T>): WorkStarter<T, S> {
+        require(successAction == null) { "onSuccess() is called twice" }
+        successAction = action
+        return this
+    }
+
+    override fun onError(action: ConsumeAction<Throwable>): WorkStarter<T, S> {
+        require(errorAction == null) { "onError() is called twice" }
+        errorAction = action
+        return this
+    }
+
+    override fun setStartDelay(delay: Long): WorkStarter<T, S> {
+        startDelay = delay
+        return this
+    }
+
+    override fun setName(name: String): WorkStarter<T, S> {
+        this.name = name
+        return this
+    }
+
+    override fun setBulkhead(bulkhead: Bulkhead): WorkStarter<T, S> {
+        this.bulkhead = bulkhead
+        return this
+    }
+
+    override fun setRateLimiter(rateLimiter: RateLimiter): WorkStarter<T, S> {
+        this.rateLimiter = rateLimiter
+        return this
+    }
+
+    /**
+     * @param owner: The job managed on behalf of this work, if it isn't managed directly, e.g. the producer job
+     */
+    protected fun executeWork(context: CoroutineContext, owner: Job? = context[Job]): Job = launch(context, owner, action)
+}
+
+/**
+ * The callbacks and settings of a work, and the launch of its executions with them. [BaseWork] extends it, so a
+ * work doesn't allocate one more object, and a [Pipeline] has one for all its executions
+ */
+internal open class WorkLauncher<T> {
+
+    var successAction: ConsumeAction<T>? = null
+    var errorAction: ConsumeAction<Throwable>? = null
+    var startDelay = 0L
+    var name: String? = null
+    var bulkhead: Bulkhead? = null
+    var rateLimiter: RateLimiter? = null
+
+    /**
+     * Called from the background thread when an execution succeeded, or failed with [exception]. It is not called
+     * when the execution is cancelled or discontinued
+     */
+    protected open fun onWorkComplete(exception: Throwable?) {}
+
+    /**
+     * @param owner: The job managed on behalf of this work, if it isn't managed directly, e.g. the producer job
+     * @param action: The action to run with the callbacks and settings, e.g. a [Pipeline] execution
+     */
+    fun launch(context: CoroutineContext, owner: Job?, action: Action<T>): Job {
+        val config = getSingletonConfig()
+        val activeWork = if (config.watchdog != null) ActiveWork(name, owner) else null
+        val workContext = if (activeWork != null) context + activeWork else context
+        val tracer = config.tracer
+        val recorder = config.flightRecorder
+        if (tracer == null && !JfrEvents.isWorkTraceEnabled) {
+            // Only the flight recorder, it records the events of the work itself, without a trace object, the
+            // stages are only recorded with a tracer or a JFR recording
+            if (recorder == null) return launchWork(workContext, null, 0, activeWork, action)
+            val workId = nextWorkId()
+            recorder.record(workId, TraceEvent.START, NO_STAGE, System.nanoTime())
+            return launchWork(workContext, null, workId, activeWork, action)
+        }
+
+        val trace = WorkTrace(tracer, recorder, name)
+        trace.trace(TraceEvent.START)
+        // only the operators read the trace from the context, a single action doesn't need the extra context
+        val tracedContext = if (action is StagedAction) workContext + trace else workContext
+        return launchWork(tracedContext, trace, 0, activeWork, action)
+    }
+
+    /**
+     * The events go to the [trace], or straight to the flight recorder as [workId] when it is the only one recording,
+     * `0` when nothing records. Either way, the work starts atomically even when it is cancelled before running, so it
+     * can record [TraceEvent.CANCEL] itself, instead of adding a completion handler to every work
+     */
+    private fun launchWork(context: CoroutineContext, trace: WorkTrace?, workId: Long, activeWork: ActiveWork?,
+                           action: Action<T>): Job {
+        val start = if (trace == null && workId == 0L) CoroutineStart.DEFAULT else CoroutineStart.ATOMIC
+        return launch(context, start) {
+            try {
+                if (!isActive) return@launch
+                if (startDelay > 0) delay(startDelay)
+                record(trace, workId, TraceEvent.START_DELAY_END)
+                activeWork?.begin(coroutineContext[Job]!!)
+
+                // Wait for the token before the bulkhead slot, so a throttled work doesn't hold a slot
+                rateLimiter?.acquire()
+                val bulkhead = bulkhead
+                val response = if (bulkhead == null) action.runAsync(this) else bulkhead.withPermit { action.runAsync(this) }
+                if (isActive) { // make sure job is not yet cancelled
+                    onWorkComplete(null)
+                    record(trace, workId, TraceEvent.SUCCESS)
+                    successAction?.let { dispatchCallback(it, response, trace, workId) }
+                }
+            } catch(exception: Throwable) {
+                if (isActive && shouldReportException(exception)) { // make sure job is not yet cancelled
+                    onWorkComplete(exception)
+                    record(trace, workId, TraceEvent.ERROR)
+                    errorAction?.let { dispatchCallback(it, exception, trace, workId) }
+                } else if (isActive) {
+                    record(trace, workId, TraceEvent.DISCONTINUE)
+                }
+            } finally {
+                activeWork?.end()
+                if (!isActive) record(trace, workId, TraceEvent.CANCEL)
+            }
+        }
+    }
+
+    private fun <R> dispatchCallback(callback: ConsumeAction<R>, value: R, trace: WorkTrace?, workId: Long) {
+        record(trace, workId, TraceEvent.CALLBACK_ENQUEUE)
+        // a plain task instead of a coroutine, the callback doesn't suspend
+        CONTEXT_UI.dispatch(EmptyCoroutineContext, CallbackTask(callback, value, trace, workId))
+    }
+}
+
+/**
+ * Record [event] to the [trace], or to the flight recorder as [workId] when there is no trace
+ */
+private fun record(trace: WorkTrace?, workId: Long, event: TraceEvent) {
+    if (trace != null) {
+        trace.trace(event)
+    } else if (workId != 0L) {
+        FLIGHT_RECORDER?.record(workId, event, NO_STAGE, System.nanoTime())
+    }
+}
+
+private class CallbackTask<R>(private val callback: ConsumeAction<R>,
+                              private val value: R,
+                              private val trace: WorkTrace?,
+                              private val workId: Long) : Runnable {
+    override fun run() {
+        record(trace, workId, TraceEvent.CALLBACK_RUN)
+        callback(value)
+    }
+}
\ No newline at end of file
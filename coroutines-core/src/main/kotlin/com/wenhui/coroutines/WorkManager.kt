@@ -0,0 +1,125 @@
+package com.wenhui.coroutines
+
+import kotlinx.coroutines.experimental.Job
+import kotlinx.coroutines.experimental.cancelChildren
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Manager of coroutine works. Use this to cancel all the active works, or the works of a tag.
+ *
+ * Managers can be nested, the works of a child manager are also managed by its parent, so they are cancelled when
+ * the parent is.
+ */
+class WorkManager @JvmOverloads constructor(private val parent: WorkManager? = null) {
+
+    // The managed jobs are attached as children, which is a lock free linked list with O(1) add and remove.
+    // It is never cancelled itself, so the manager can still be used after cancelAllWorks()
+    private val parentJob = Job()
+
+    // Index of the tagged works, a tag is removed once all its works are completed
+    private val tags = ConcurrentHashMap<Any, TagGroup>()
+
+    internal fun manageJob(job: Job) {
+        attach(parentJob, job)
+        parent?.manageJob(job)
+    }
+
+    internal fun manageJob(job: Job, tag: Any) {
+        val group = acquireGroup(tag)
+        val handle = group.job.attachChild(job)
+        job.invokeOnCompletion {
+            handle.dispose()
+            if (group.release()) tags.remove(tag, group)
+        }
+        manageJob(job)
+    }
+
+    private fun acquireGroup(tag: Any): TagGroup {
+        while (true) {
+            val group = tags[tag] ?: TagGroup().let { tags.putIfAbsent(tag, it) ?: it }
+            if (group.acquire()) return group
+            // The group is being removed after its last work completed, create a new one
+            tags.remove(tag, group)
+        }
+    }
+
+    /**
+     * Cancel all the works managed by this manager, including the works of its child managers
+     */
+    fun cancelAllWorks() {
+        val event = JfrEvents.WORK_MANAGER_CANCEL?.begin()
+        parentJob.cancelChildren()
+        event?.commit(null)
+    }
+
+    /**
+     * Cancel the works managed with [tag], the other works are not affected
+     */
+    fun cancelByTag(tag: Any) {
+        val event = JfrEvents.WORK_MANAGER_CANCEL?.begin()
+        tags[tag]?.job?.cancelChildren()
+        event?.commit(tag.toString())
+    }
+
+    /**
+     * Return `true` if there is at least one active work
+     */
+    fun hasActiveWork() = parentJob.children.any { it.isActive }
+
+    /**
+     * Return `true` if there is at least one active work managed with [tag]
+     */
+    fun hasActiveWork(tag: Any) = tags[tag]?.job?.children?.any { it.isActive } ?: false
+
+    /**
+     * Return the running works managed by this manager, it is always empty unless
+     * [Configuration.Builder.watchdog] is set
+     */
+    fun dumpActiveWorks(): List<ActiveWorkInfo> {
+        val jobs = parentJob.children.toHashSet()
+        return ActiveWorks.toList().filter { it.isManagedBy(jobs) }.map { it.snapshot() }
+    }
+
+    private fun attach(parent: Job, job: Job) {
+        val handle = parent.attachChild(job)
+        // Detach the job once it is completed, so the manager doesn't hold it
+        job.invokeOnCompletion { handle.dispose() }
+    }
+}
+
+/**
+ * The works of a tag, [count] is the number of works, or -1 once the group is removed from the index
+ */
+private class TagGroup {
+    val job = Job()
+    private val count = AtomicInteger()
+
+    fun acquire(): Boolean {
+        while (true) {
+            val current = count.get()
+            if (current < 0) return false
+            if (count.compareAndSet(current, current + 1)) return true
+        }
+    }
+
+    /**
+     * Return `true` if this is the last work, and the group should be removed
+     */
+    fun release(): Boolean = count.decrementAndGet() == 0 && count.compareAndSet(0, -1)
+}
+
+interface Manageable<S> {
+
+    /**
+     * Allow auto manage by [WorkManager], so when [WorkManager.cancelAllWorks] is called, the
+     * current work will be cancelled
+     */
+    fun manageBy(manager: WorkManager): S
+
+    /**
+     * Allow auto manage by [WorkManager] with a tag, so the current work is cancelled when either
+     * [WorkManager.cancelAllWorks] or [WorkManager.cancelByTag] is called
+     */
+    fun manageBy(manager: WorkManager, tag: Any): S
+}
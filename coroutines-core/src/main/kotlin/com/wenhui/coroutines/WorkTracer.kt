@@ -0,0 +1,113 @@
+package com.wenhui.coroutines
+
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.coroutines.experimental.AbstractCoroutineContextElement
+import kotlin.coroutines.experimental.CoroutineContext
+
+/**
+ * Stage number used for the events that don't belong to an operator stage
+ */
+const val NO_STAGE = -1
+
+enum class TraceEvent {
+    /**
+     * [Starter.start] is called, and the work is queued to the background executor
+     */
+    START,
+
+    /**
+     * The work got a background thread after the start delay, if there is any. The time from [START] is the start
+     * delay plus the time waiting in the executor queue. The source of the work runs right after this
+     */
+    START_DELAY_END,
+
+    /**
+     * An operator stage is queued to its context, the source of the work completed if this is the first stage
+     */
+    STAGE_ENQUEUE,
+
+    /**
+     * An operator stage starts running, the time from [STAGE_ENQUEUE] is the time waiting for the thread
+     */
+    STAGE_BEGIN,
+
+    /**
+     * An operator stage is done, either succeeded or failed
+     */
+    STAGE_END,
+
+    /**
+     * The success or error callback is posted to the UI thread
+     */
+    CALLBACK_ENQUEUE,
+
+    /**
+     * The success or error callback starts running on the UI thread
+     */
+    CALLBACK_RUN,
+
+    /**
+     * The work succeeded
+     */
+    SUCCESS,
+
+    /**
+     * The work is discontinued by a filter, there is no result
+     */
+    DISCONTINUE,
+
+    /**
+     * The work failed
+     */
+    ERROR,
+
+    /**
+     * The work is cancelled
+     */
+    CANCEL
+}
+
+/**
+ * Receive timestamped events of each work execution, register it with [Configuration.Builder.tracer].
+ *
+ * NOTE: this is called from different threads, including the UI thread, so it must be thread safe and fast
+ */
+interface WorkTracer {
+
+    /**
+     * @param workId: Unique id of the work execution
+     * @param workName: The name set by [Starter.setName], or `null` if there is none
+     * @param event: What happened
+     * @param stage: The operator stage of the event, 1 for the first operator after the source, or [NO_STAGE]
+     * @param timeNanos: When it happened, from [System.nanoTime]
+     */
+    fun onEvent(workId: Long, workName: String?, event: TraceEvent, stage: Int, timeNanos: Long)
+}
+
+private val workIds = AtomicLong()
+
+/**
+ * Unique id of a work execution
+ */
+internal fun nextWorkId() = workIds.incrementAndGet()
+
+/**
+ * Tracing state of a work execution, it is only created when there is a [WorkTracer] or a JFR recording of the work
+ * events, the [FlightRecorder] alone records the events of a work without it
+ */
+internal class WorkTrace(private val tracer: WorkTracer?,
+                         private val recorder: FlightRecorder?,
+                         private val name: String?) : AbstractCoroutineContextElement(WorkTrace) {
+
+    companion object Key : CoroutineContext.Key<WorkTrace>
+
+    private val id = nextWorkId()
+    private val jfr = if (JfrEvents.isWorkTraceEnabled) JfrWorkTrace(id, name) else null
+
+    fun trace(event: TraceEvent, stage: Int = NO_STAGE) {
+        val time = System.nanoTime()
+        recorder?.record(id, event, stage, time)
+        jfr?.onEvent(event, stage, time)
+        tracer?.onEvent(id, name, event, stage, time)
+    }
+}
@@ -0,0 +1,167 @@
+package com.wenhui.coroutines
+
+import com.wenhui.coroutines.functions.ConsumeAction
+import kotlinx.coroutines.experimental.Job
+import kotlinx.coroutines.experimental.launch
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+
+/**
+ * Utility method to create a new background work
+ */
+internal fun <T> newFutureWork(action: Action<T>): FutureWork<T> = FutureWorkImpl(action)
+
+interface FutureWork<T> : Work<T, Worker> {
+
+    override fun <U> transform(action: Function1<T, U>): FutureWork<U> = transform(CoroutineContexts.BACKGROUND, action)
+
+    override fun <U> transform(context: CoroutineContexts, action: Function1<T, U>): FutureWork<U>
+
+    override fun <U> transform(context: NamedContext, action: Function1<T, U>): FutureWork<U>
+
+    override fun consume(action: ConsumeAction<T>): FutureWork<T> = consume(CoroutineContexts.BACKGROUND, action)
+
+    override fun consume(context: CoroutineContexts, action: ConsumeAction<T>): FutureWork<T>
+
+    override fun consume(context: CoroutineContexts, action: KConsumeAction<T>): FutureWork<T>
+            = consume(context, KConsumeActionWrapper(action))
+
+    override fun consume(context: NamedContext, action: ConsumeAction<T>): FutureWork<T>
+
+    override fun consume(context: NamedContext, action: KConsumeAction<T>): FutureWork<T>
+            = consume(context, KConsumeActionWrapper(action))
+
+    override fun filter(action: FilterAction<T>): FutureWork<T> = filter(CoroutineContexts.BACKGROUND, action)
+
+    override fun filter(context: CoroutineContexts, action: FilterAction<T>): FutureWork<T>
+
+    override fun filter(context: NamedContext, action: FilterAction<T>): FutureWork<T>
+
+    /**
+     * Synchronous call to get the computation result, throw exception if there are errors
+     *
+     * NOTE: this will block the current thread to wait of the result
+     *
+     * @throws [ExecutionException]
+     * @throws [CancellationException]
+     */
+    fun get(): T
+
+    /**
+     * Start the work, and return a [CompletableFuture] that is completed from the background work without blocking
+     * any thread. Cancelling the future cancels the work, and cancelling the work cancels the future.
+     *
+     * NOTE: [onSuccess] and [onError] are not used, listen to the future instead. On Android, [CompletableFuture]
+     * only exists from API 24, the caller needs to check it
+     */
+    fun toCompletableFuture(): CompletableFuture<T>
+
+    /**
+     * Start the work, and share its result with any number of subscribers, the result is kept until the shared
+     * work is cancelled
+     */
+    fun share(): SharedWork<T> = share(RETAIN_FOREVER)
+
+    /**
+     * Start the work, and share its result with any number of subscribers
+     *
+     * @param retention: How long in milliseconds the result is kept after completion, the next subscriber after
+     * that starts the work again
+     */
+    fun share(retention: Long): SharedWork<T>
+}
+
+class ExecutionException(cause: Throwable) : Exception(cause)
+class CancellationException(message: String = "Execution cancelled") : Exception(message)
+
+/**
+ * Represent a background work, which can be [cancel] when needed.
+ */
+interface Worker : Manageable<Worker> {
+
+    /**
+     * Returns `true` when this work has completed for any reason, included cancellation.
+     */
+    val isCompleted: Boolean
+
+
+    /**
+     * Cancel this work. The result is `true` if this work was
+     * cancelled as a result of this invocation and `false` otherwise
+     */
+    fun cancel(): Boolean
+
+}
+
+internal class WorkerImpl(private val job: Job) : Worker {
+
+    override val isCompleted: Boolean get() = job.isCompleted
+
+    override fun cancel() = job.cancel()
+
+    override fun manageBy(manager: WorkManager): Worker {
+        manager.manageJob(job)
+        return this
+    }
+
+    override fun manageBy(manager: WorkManager, tag: Any): Worker {
+        manager.manageJob(job, tag)
+        return this
+    }
+}
+
+
+private class FutureWorkImpl<T>(private val action: Action<T>) : FutureWork<T>, BaseWork<T, Worker>(action) {
+
+    override fun <R> newWork(action: Action<R>): FutureWork<R> = FutureWorkImpl(action)
+
+    override fun <U> transform(context: CoroutineContexts, action: Function1<T, U>): FutureWork<U> {
+        return newWork(Transformer(this.action, context.context, action))
+    }
+
+    override fun <U> transform(context: NamedContext, action: Function1<T, U>): FutureWork<U> {
+        return newWork(Transformer(this.action, context.context, action))
+    }
+
+    override fun consume(context: CoroutineContexts, action: ConsumeAction<T>): FutureWork<T> {
+        return newWork(User(this.action, context.context, action))
+    }
+
+    override fun consume(context: NamedContext, action: ConsumeAction<T>): FutureWork<T> {
+        return newWork(User(this.action, context.context, action))
+    }
+
+    override fun filter(context: CoroutineContexts, action: FilterAction<T>): FutureWork<T> {
+        return newWork(Filter(this.action, context.context, action))
+    }
+
+    override fun filter(context: NamedContext, action: FilterAction<T>): FutureWork<T> {
+        return newWork(Filter(this.action, context.context, action))
+    }
+
+    override fun start(): Worker = WorkerImpl(executeWork(CONTEXT_BG))
+
+    override fun get(): T = action.run()
+
+    override fun share(retention: Long): SharedWork<T> = SharedWorkImpl(action, retention)
+
+    override fun toCompletableFuture(): CompletableFuture<T> {
+        val future = CompletableFuture<T>()
+        val job = launch(CONTEXT_BG) {
+            try {
+                future.complete(action.runAsync(this))
+            } catch (exception: Throwable) {
+                if (shouldReportException(exception)) {
+                    future.completeExceptionally(exception)
+                } else {
+                    // the item is filtered out, there is no result
+                    future.cancel(false)
+                }
+            }
+        }
+        job.invokeOnCompletion { if (job.isCancelled) future.cancel(false) }
+        future.whenComplete { _, _ -> if (future.isCancelled) job.cancel() }
+        return future
+    }
+}
+
@@ -0,0 +1,124 @@
+package com.wenhui.coroutines
+
+import kotlinx.coroutines.experimental.CoroutineDispatcher
+import kotlinx.coroutines.experimental.asCoroutineDispatcher
+import org.assertj.core.api.Java6Assertions.assertThat
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.BeforeClass
+import org.junit.Test
+import java.lang.management.ManagementFactory
+import java.util.ArrayDeque
+import java.util.concurrent.Executor
+
+/**
+ * Bytes allocated per work for the common shapes of works. The works run on an executor drained by the test thread,
+ * so only what the works allocate is counted, not the queues and parking of a thread pool, nor other threads. It
+ * needs a JVM of its own to configure the executor, and escape analysis off so the counts don't depend on what the
+ * JIT happens to inline, see the allocationTest task. Raise a budget only with a reason, each sits between what the
+ * works allocate now and what they allocated before the lean path
+ */
+class AllocationBudgetTest {
+
+    private val threads = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+    private var completed = 0
+
+    @Before
+    fun setup() {
+        assumeTrue(threads != null && threads.isThreadAllocatedMemorySupported)
+        threads!!.isThreadAllocatedMemoryEnabled = true
+        // skipped when another test already started the background dispatcher in this JVM
+        from { }.start()
+        assumeTrue(!TASKS.isEmpty())
+        runTasks()
+    }
+
+    @Test
+    fun testSource() {
+        val bytes = bytesPerWork { from { completed++ }.start() }
+        assertThat(bytes).isLessThan(SOURCE_BUDGET)
+    }
+
+    @Test
+    fun testSourceWithCallbacks() {
+        val bytes = bytesPerWork {
+            from { 1 }.onSuccess { completed++ }.onError { completed++ }.start()
+        }
+        assertThat(bytes).isLessThan(CALLBACKS_BUDGET)
+    }
+
+    @Test
+    fun testTransformWithCallback() {
+        val bytes = bytesPerWork {
+            from { 1 }.transform { it + 1 }.onSuccess { completed++ }.start()
+        }
+        assertThat(bytes).isLessThan(TRANSFORM_BUDGET)
+    }
+
+    @Test
+    fun testPipelineExecution() {
+        val pipeline = pipeline<Int>().transform { it + 1 }.onSuccess { completed++ }
+        val bytes = bytesPerWork { pipeline.execute(1) }
+        assertThat(bytes).isLessThan(PIPELINE_BUDGET)
+    }
+
+    private fun bytesPerWork(startWork: () -> Unit): Long {
+        runWorks(WARMUP_WORKS, startWork)
+        // the median of a few rounds, so a GC in one round doesn't fail the test
+        val rounds = (0 until 5).map {
+            val before = allocatedBytes()
+            runWorks(MEASURED_WORKS, startWork)
+            (allocatedBytes() - before) / MEASURED_WORKS
+        }
+        return rounds.sorted()[rounds.size / 2]
+    }
+
+    private fun runWorks(count: Int, startWork: () -> Unit) {
+        completed = 0
+        repeat(count) {
+            startWork()
+            runTasks()
+        }
+        assertThat(completed).isEqualTo(count)
+    }
+
+    private fun allocatedBytes(): Long = threads!!.getThreadAllocatedBytes(Thread.currentThread().id)
+
+    private companion object {
+        const val WARMUP_WORKS = 20_000
+        const val MEASURED_WORKS = 10_000
+
+        // HotSpot 8 to 21 with compressed oops, in bytes per work, in the default configuration, so with the flight
+        // recorder on and no tracer:
+        //   source     359, before the lean path 527 to 575
+        //   callbacks  432, before 752 to 800
+        //   transform  536, before 1040 to 1088
+        //   pipeline   472
+        const val SOURCE_BUDGET = 380L
+        const val CALLBACKS_BUDGET = 450L
+        const val TRANSFORM_BUDGET = 560L
+        const val PIPELINE_BUDGET = 500L
+
+        // The background and main tasks, only used from the test thread
+        val TASKS = ArrayDeque<Runnable>()
+        val TEST_THREAD_EXECUTOR = Executor { TASKS.add(it) }
+
+        @BeforeClass
+        @JvmStatic
+        fun configure() {
+            resetConfiguration()
+            configCoroutinesAdapter(Configuration.Builder()
+                    .executor(TEST_THREAD_EXECUTOR)
+                    .platform(object : Platform {
+                        override val mainDispatcher: CoroutineDispatcher = TEST_THREAD_EXECUTOR.asCoroutineDispatcher()
+                    })
+                    .build())
+        }
+
+        fun runTasks() {
+            while (true) {
+                (TASKS.poll() ?: return).run()
+            }
+        }
+    }
+}
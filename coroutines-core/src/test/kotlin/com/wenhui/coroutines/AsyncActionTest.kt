@@ -0,0 +1,97 @@
+package com.wenhui.coroutines
+
+import org.assertj.core.api.Java6Assertions.assertThat
+import org.junit.After
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+
+class AsyncActionTest {
+
+    // Stands for an async API that calls back from its own thread
+    private val scheduler = Executors.newSingleThreadScheduledExecutor()
+
+    @After
+    fun tearDown() {
+        scheduler.shutdownNow()
+    }
+
+    @Test
+    fun testManyWorksInFlight() {
+        val count = 1000
+        val doneSignal = CountDownLatch(count)
+        val total = AtomicInteger()
+
+        val startTime = System.nanoTime()
+        repeat(count) { i ->
+            from(DelayedAction(i, 50)).onSuccess {
+                total.addAndGet(it)
+                doneSignal.countDown()
+            }.start()
+        }
+
+        assertThat(doneSignal.await(5, TimeUnit.SECONDS)).isTrue()
+        // blocking a background thread for each call would take more than 8 seconds
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)).isLessThan(3000)
+        assertThat(total.get()).isEqualTo((0 until count).sum())
+    }
+
+    @Test
+    fun testError() {
+        val error = AtomicReference<Throwable>()
+        val doneSignal = CountDownLatch(1)
+        from(object : AsyncAction<Int>() {
+            override fun start(callback: AsyncCallback<Int>) {
+                scheduler.execute { callback.onError(IllegalStateException("Failed")) }
+            }
+        }).onError {
+            error.set(it)
+            doneSignal.countDown()
+        }.start()
+
+        assertThat(doneSignal.await(1, TimeUnit.SECONDS)).isTrue()
+        assertThat(error.get()).isInstanceOf(IllegalStateException::class.java)
+    }
+
+    @Test
+    fun testCancel() {
+        val cancelled = CountDownLatch(1)
+        val started = CountDownLatch(1)
+        val worker = from(object : AsyncAction<Int>() {
+            override fun start(callback: AsyncCallback<Int>) {
+                started.countDown()
+            }
+
+            override fun onCancel() {
+                cancelled.countDown()
+            }
+        }).start()
+
+        assertThat(started.await(1, TimeUnit.SECONDS)).isTrue()
+        worker.cancel()
+
+        assertThat(cancelled.await(1, TimeUnit.SECONDS)).isTrue()
+    }
+
+    @Test
+    fun testOnlyFirstCallbackUsed() {
+        val action = object : AsyncAction<Int>() {
+            override fun start(callback: AsyncCallback<Int>) {
+                callback.onSuccess(1)
+                callback.onSuccess(2)
+                callback.onError(IllegalStateException("Ignored"))
+            }
+        }
+
+        assertThat(from(action).get()).isEqualTo(1)
+    }
+
+    private inner class DelayedAction(private val value: Int, private val delayMillis: Long) : AsyncAction<Int>() {
+        override fun start(callback: AsyncCallback<Int>) {
+            scheduler.schedule({ callback.onSuccess(value) }, delayMillis, TimeUnit.MILLISECONDS)
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.wenhui.coroutines
+
+import org.assertj.core.api.Java6Assertions.assertThat
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+class BaseActionTest {
+
+    @Test
+    fun testInterruptible_cancelInterruptsRun() {
+        val started = CountDownLatch(1)
+        val interrupted = CountDownLatch(1)
+        val cancelled = CountDownLatch(1)
+        val worker = from(object : BaseAction<Int>(true) {
+            override fun run(): Int {
+                started.countDown()
+                try {
+                    Thread.sleep(5000)
+                } catch (e: InterruptedException) {
+                    interrupted.countDown()
+                    throw e
+                }
+                return 1
+            }
+
+            override fun onCancel() {
+                cancelled.countDown()
+            }
+        }).start()
+
+        assertThat(started.await(1, TimeUnit.SECONDS)).isTrue()
+        worker.cancel()
+
+        assertThat(cancelled.await(1, TimeUnit.SECONDS)).isTrue()
+        assertThat(interrupted.await(1, TimeUnit.SECONDS)).isTrue()
+    }
+
+    @Test
+    fun testInterruptible_threadNotLeftInterrupted() {
+        val started = CountDownLatch(1)
+        val worker = from(object : BaseAction<Int>(true) {
+            override fun run(): Int {
+                started.countDown()
+                // ignore the interrupt, so it is still set when run returns
+                val end = System.currentTimeMillis() + 100
+                while (System.currentTimeMillis() < end) Thread.yield()
+                return 1
+            }
+        }).start()
+        assertThat(started.await(1, TimeUnit.SECONDS)).isTrue()
+        worker.cancel()
+
+        val interruptedThreads = AtomicInteger()
+        val doneSignal = CountDownLatch(THREAD_SIZE * 4)
+        Thread.sleep(150)
+        repeat(THREAD_SIZE * 4) {
+            from {
+                if (Thread.currentThread().isInterrupted) interruptedThreads.incrementAndGet()
+                Thread.sleep(10)
+                doneSignal.countDown()
+            }.start()
+        }
+
+        assertThat(doneSignal.await(2, TimeUnit.SECONDS)).isTrue()
+        assertThat(interruptedThreads.get()).isEqualTo(0)
+    }
+
+    @Test
+    fun testNotInterruptible_onlyCancelHook() {
+        val started = CountDownLatch(1)
+        val cancelled = CountDownLatch(1)
+        val finished = CountDownLatch(1)
+        val interrupted = AtomicBoolean()
+        val worker = from(object : BaseAction<Int>() {
+            override fun run(): Int {
+                started.countDown()
+                try {
+                    cancelled.await(1, TimeUnit.SECONDS)
+                } catch (e: InterruptedException) {
+                    interrupted.set(true)
+                }
+                finished.countDown()
+                return 1
+            }
+
+            override fun onCancel() {
+                cancelled.countDown()
+            }
+        }).start()
+
+        assertThat(started.await(1, TimeUnit.SECONDS)).isTrue()
+        worker.cancel()
+
+        assertThat(finished.await(1, TimeUnit.SECONDS)).isTrue()
+        assertThat(interrupted.get()).isFalse()
+    }
+
+    @Test
+    fun testCancelHookNotCalledAfterCompletion() {
+        val cancelled = AtomicBoolean()
+        val action = object : BaseAction<Int>(true) {
+            override fun run() = 1
+
+            override fun onCancel() {
+                cancelled.set(true)
+            }
+        }
+
+        val worker = from(action).onSuccess {}.start()
+        assertThat(from(action).get()).isEqualTo(1)
+        Thread.sleep(50)
+        worker.cancel()
+
+        assertThat(cancelled.get()).isFalse()
+    }
+}
@@ -0,0 +1,55 @@
+package com.wenhui.coroutines
+
+import kotlinx.coroutines.experimental.asCoroutineDispatcher
+import kotlinx.coroutines.experimental.launch
+import kotlinx.coroutines.experimental.runBlocking
+import org.assertj.core.api.Java6Assertions.assertThat
+import org.junit.Test
+import java.util.ArrayDeque
+import java.util.concurrent.Executor
+
+class BulkheadPermitTest {
+
+    // Run the waiters on the test thread, so the cancellation can land between the hand over and the resume
+    private val tasks = ArrayDeque<Runnable>()
+    private val dispatcher = Executor { tasks.add(it) }.asCoroutineDispatcher()
+
+    @Test
+    fun testCancelWaitersWhileReleasing() {
+        val bulkhead = Bulkhead("test", 1, 2)
+        runBlocking { bulkhead.acquire() }
+        val waiters = List(2) { launch(dispatcher) { bulkhead.withPermit { } } }
+        runTasks()
+        assertThat(bulkhead.queuedCount).isEqualTo(2)
+
+        // The slot is handed over to the first waiter, which is cancelled before it resumes
+        bulkhead.release()
+        waiters.forEach { it.cancel() }
+        runTasks()
+
+        assertThat(waiters.all { it.isCompleted }).isTrue()
+        assertThat(bulkhead.activeCount).isEqualTo(0)
+        assertThat(bulkhead.queuedCount).isEqualTo(0)
+    }
+
+    @Test
+    fun testCancelWaiterBeforeRelease() {
+        val bulkhead = Bulkhead("test", 1, 1)
+        runBlocking { bulkhead.acquire() }
+        val waiter = launch(dispatcher) { bulkhead.withPermit { } }
+        runTasks()
+
+        waiter.cancel()
+        bulkhead.release()
+        runTasks()
+
+        assertThat(bulkhead.activeCount).isEqualTo(0)
+        assertThat(bulkhead.queuedCount).isEqualTo(0)
+    }
+
+    private fun runTasks() {
+        while (true) {
+            (tasks.poll() ?: return).run()
+        }
+    }
+}
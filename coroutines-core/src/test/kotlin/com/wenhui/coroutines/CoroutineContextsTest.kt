@@ -0,0 +1,97 @@
+package com.wenhui.coroutines
+
+import org.assertj.core.api.Java6Assertions.assertThat
+import org.junit.Before
+import org.junit.Test
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class CoroutineContextsTest {
+
+    @Before
+    fun setup() {
+        resetConfiguration()
+    }
+
+    @Test
+    fun testSerialContext_oneAtATime() {
+        configCoroutinesAdapter(Configuration.Builder().serialContext("db").build())
+        val db = CoroutineContexts.named("db")
+        val running = AtomicInteger()
+        val maxRunning = AtomicInteger()
+        val order = CopyOnWriteArrayList<Int>()
+        val doneSignal = CountDownLatch(20)
+
+        repeat(20) { i ->
+            from { i }.consume(db) {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max)
+                Thread.sleep(2)
+                order.add(it)
+                running.decrementAndGet()
+                doneSignal.countDown()
+            }.start()
+        }
+
+        assertThat(doneSignal.await(2, TimeUnit.SECONDS)).isTrue()
+        assertThat(maxRunning.get()).isEqualTo(1)
+        assertThat(order.sorted()).isEqualTo((0 until 20).toList())
+    }
+
+    @Test
+    fun testSerialContext_runsOnBackgroundPool() {
+        configCoroutinesAdapter(Configuration.Builder().serialContext("db").build())
+        val threadName = CopyOnWriteArrayList<String>()
+        val doneSignal = CountDownLatch(1)
+
+        pipeline<Int>().consume(CoroutineContexts.named("db")) {
+            threadName.add(Thread.currentThread().name)
+            doneSignal.countDown()
+        }.execute(1)
+
+        assertThat(doneSignal.await(1, TimeUnit.SECONDS)).isTrue()
+        assertThat(threadName[0]).startsWith("CoroutinesAdapter-Background")
+    }
+
+    @Test
+    fun testExecutorContext() {
+        val executor = Executors.newSingleThreadExecutor { Thread(it, "image-decode") }
+        try {
+            configCoroutinesAdapter(Configuration.Builder().context("decode", executor).build())
+            val decode = CoroutineContexts.named("decode")
+
+            val threadName = CopyOnWriteArrayList<String>()
+            val doneSignal = CountDownLatch(1)
+
+            from { 1 }.consume(decode) {
+                threadName.add(Thread.currentThread().name)
+                doneSignal.countDown()
+            }.start()
+
+            assertThat(doneSignal.await(1, TimeUnit.SECONDS)).isTrue()
+            assertThat(threadName[0]).isEqualTo("image-decode")
+            assertThat(CoroutineContexts.named("decode")).isSameAs(decode)
+            assertThat(decode.name).isEqualTo("decode")
+        } finally {
+            executor.shutdown()
+        }
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun testUnknownContext() {
+        configCoroutinesAdapter(Configuration.Builder().build())
+        CoroutineContexts.named("db")
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun testDuplicateContext() {
+        Configuration.Builder().serialContext("db").serialContext("db")
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun testReservedContextName() {
+        Configuration.Builder().serialContext("UI")
+    }
+}
@@ -3,13 +3,12 @@ package com.wenhui.coroutines
 import org.assertj.core.api.Java6Assertions.assertThat
 import org.junit.Before
 import org.junit.Test
-import org.junit.runner.RunWith
-import org.robolectric.RobolectricTestRunner
-import org.robolectric.annotation.Config
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
 import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicReference
 
-@RunWith(RobolectricTestRunner::class)
-@Config(constants = BuildConfig::class)
 class CoroutinesAdapterTest {
 
     @Before
@@ -48,4 +47,36 @@ class CoroutinesAdapterTest {
         assertThat(singletonConfig).isNotNull()
         assertThat(singletonConfig.executor).isNotNull()
     }
-}
\ No newline at end of file
+
+    @Test
+    fun testDefaultPlatform_jvm() {
+        assertThat(getSingletonConfig().platform).isInstanceOf(JvmPlatform::class.java)
+
+        val callbackThread = AtomicReference<String>()
+        val doneSignal = CountDownLatch(1)
+        from { 1 }.onSuccess {
+            callbackThread.set(Thread.currentThread().name)
+            doneSignal.countDown()
+        }.start()
+
+        assertThat(doneSignal.await(1, TimeUnit.SECONDS)).isTrue()
+        assertThat(callbackThread.get()).isEqualTo("CoroutinesAdapter-Main")
+    }
+
+    @Test
+    fun testCustomPlatform_log() {
+        val messages = CopyOnWriteArrayList<String>()
+        val platform = object : JvmPlatform() {
+            override val isLogEnabled: Boolean get() = true
+
+            override fun log(message: String) {
+                messages.add(message)
+            }
+        }
+        configCoroutinesAdapter(Configuration.Builder().platform(platform).build())
+
+        log { "message" }
+
+        assertThat(messages).containsExactly("message")
+    }
+}
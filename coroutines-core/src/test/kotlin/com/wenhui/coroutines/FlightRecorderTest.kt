@@ -0,0 +1,113 @@
+package com.wenhui.coroutines
+
+import org.assertj.core.api.Java6Assertions.assertThat
+import org.junit.After
+import org.junit.Test
+import java.io.File
+import java.io.StringWriter
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class FlightRecorderTest {
+
+    @After
+    fun tearDown() {
+        resetConfiguration()
+    }
+
+    @Test
+    fun testDump() {
+        val recorder = FlightRecorder(8)
+        recorder.record(1, TraceEvent.START, NO_STAGE, 100)
+        recorder.record(1, TraceEvent.STAGE_BEGIN, 2, 200)
+        recorder.log("hello")
+
+        val lines = dump(recorder)
+        assertThat(lines).hasSize(4)
+        assertThat(lines[1]).startsWith("100 [").endsWith("] work=1 START")
+        assertThat(lines[2]).startsWith("200 [").endsWith("] work=1 STAGE_BEGIN stage=2")
+        assertThat(lines[3]).endsWith("] hello")
+        assertThat(lines[1]).contains(Thread.currentThread().name)
+    }
+
+    @Test
+    fun testKeepMostRecentEvents() {
+        val recorder = FlightRecorder(8)
+        repeat(20) { recorder.record(it.toLong(), TraceEvent.SUCCESS, NO_STAGE, it.toLong()) }
+
+        val lines = dump(recorder)
+        assertThat(lines[0]).contains("8 of 20 events")
+        assertThat(lines).hasSize(9)
+        assertThat(lines[1]).endsWith("work=12 SUCCESS")
+        assertThat(lines[8]).endsWith("work=19 SUCCESS")
+    }
+
+    @Test
+    fun testRecordWorks() {
+        resetConfiguration()
+        configCoroutinesAdapter(Configuration.Builder().flightRecorderSize(64).build())
+        val doneSignal = CountDownLatch(1)
+        from { 1 }.transform { doneSignal.countDown() }.start()
+        assertThat(doneSignal.await(1, TimeUnit.SECONDS)).isTrue()
+        Thread.sleep(50)
+
+        val text = dumpToText()
+        assertThat(text).contains("START", "START_DELAY_END", "SUCCESS")
+        // the stages are only recorded with a tracer
+        assertThat(text).doesNotContain("STAGE_BEGIN")
+    }
+
+    @Test
+    fun testRecordCancelBeforeStart() {
+        resetConfiguration()
+        configCoroutinesAdapter(Configuration.Builder().build())
+        from { 1 }.setStartDelay(10_000).start().cancel()
+        Thread.sleep(50)
+
+        assertThat(dumpToText()).contains("CANCEL")
+    }
+
+    @Test
+    fun testRecordStagesWithTracer() {
+        resetConfiguration()
+        configCoroutinesAdapter(Configuration.Builder()
+                .tracer(object : WorkTracer {
+                    override fun onEvent(workId: Long, workName: String?, event: TraceEvent, stage: Int,
+                                         timeNanos: Long) {}
+                })
+                .build())
+        val doneSignal = CountDownLatch(1)
+        from { 1 }.transform { doneSignal.countDown() }.start()
+        assertThat(doneSignal.await(1, TimeUnit.SECONDS)).isTrue()
+        Thread.sleep(50)
+
+        assertThat(dumpToText()).contains("START_DELAY_END", "STAGE_BEGIN stage=1", "SUCCESS")
+    }
+
+    @Test
+    fun testOnByDefault() {
+        resetConfiguration()
+        assertThat(FLIGHT_RECORDER).isNotNull()
+    }
+
+    @Test
+    fun testTurnOff() {
+        resetConfiguration()
+        configCoroutinesAdapter(Configuration.Builder().flightRecorderSize(0).build())
+        assertThat(FLIGHT_RECORDER).isNull()
+    }
+
+    private fun dumpToText(): String {
+        val file = File.createTempFile("flight-recorder", ".txt")
+        dumpFlightRecorder(file)
+        val text = file.readText()
+        file.delete()
+        return text
+    }
+
+    private fun dump(recorder: FlightRecorder): List<String> {
+        val writer = StringWriter()
+        recorder.dump(writer)
+        return writer.toString().lines().filter { it.isNotEmpty() }
+    }
+}
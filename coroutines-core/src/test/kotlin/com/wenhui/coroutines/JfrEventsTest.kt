@@ -0,0 +1,88 @@
+package com.wenhui.coroutines
+
+import org.assertj.core.api.Java6Assertions.assertThat
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * JFR is accessed by reflection, the same as the library, since jdk.jfr is not part of the Android SDK
+ */
+class JfrEventsTest {
+
+    @Before
+    fun setup() {
+        assumeTrue(JfrEvents.isAvailable)
+    }
+
+    @Test
+    fun testWorkEvents() {
+        val events = record("Work", "Stage") {
+            val doneSignal = CountDownLatch(1)
+            from { 1 }.transform { it + 1 }.consume { doneSignal.countDown() }.setName("jfr").start()
+            assertThat(doneSignal.await(1, TimeUnit.SECONDS)).isTrue()
+            Thread.sleep(100)
+        }
+
+        assertThat(events).contains("com.wenhui.coroutines.Work jfr SUCCESS", "com.wenhui.coroutines.Stage jfr 1",
+                "com.wenhui.coroutines.Stage jfr 2")
+    }
+
+    @Test
+    fun testWorkManagerCancelEvent() {
+        val events = record("WorkManagerCancel") {
+            WorkManager().cancelByTag("row-1")
+        }
+
+        assertThat(events).containsExactly("com.wenhui.coroutines.WorkManagerCancel row-1")
+    }
+
+    @Test
+    fun testEnabledOnlyWhileRecording() {
+        assertThat(JfrEvents.isWorkTraceEnabled).isFalse()
+        assertThat(JfrEvents.PRODUCER_DEQUEUE!!.isEnabled).isFalse()
+
+        record("Work") {
+            assertThat(JfrEvents.isWorkTraceEnabled).isTrue()
+            assertThat(JfrEvents.PRODUCER_DEQUEUE!!.isEnabled).isFalse()
+        }
+
+        assertThat(JfrEvents.isWorkTraceEnabled).isFalse()
+    }
+
+    /**
+     * Record the [events] while running [block], and return them as "name field1 field2..."
+     */
+    private fun record(vararg events: String, block: () -> Unit): List<String> {
+        val recordingClass = Class.forName("jdk.jfr.Recording")
+        val recording = recordingClass.newInstance()
+        events.forEach { recordingClass.getMethod("enable", String::class.java).invoke(recording, "com.wenhui.coroutines.$it") }
+        recordingClass.getMethod("start").invoke(recording)
+        block()
+        recordingClass.getMethod("stop").invoke(recording)
+
+        val file = File.createTempFile("coroutines", ".jfr")
+        val path = file.toPath()
+        recordingClass.getMethod("dump", java.nio.file.Path::class.java).invoke(recording, path)
+        recordingClass.getMethod("close").invoke(recording)
+
+        val recordedEventClass = Class.forName("jdk.jfr.consumer.RecordedEvent")
+        val recordedEvents = Class.forName("jdk.jfr.consumer.RecordingFile")
+                .getMethod("readAllEvents", java.nio.file.Path::class.java).invoke(null, path) as List<*>
+        file.delete()
+        return recordedEvents.map { event ->
+            val type = recordedEventClass.getMethod("getEventType").invoke(event)
+            val name = type.javaClass.getMethod("getName").invoke(type) as String
+            val fields = when (name) {
+                "com.wenhui.coroutines.Work" -> listOf("workName", "outcome")
+                "com.wenhui.coroutines.Stage" -> listOf("workName", "stage")
+                else -> listOf("tag")
+            }
+            val values = fields.map { recordedEventClass.getMethod("getValue", String::class.java).invoke(event, it) }
+            (listOf(name) + values).joinToString(" ")
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.wenhui.coroutines
+
+import org.assertj.core.api.Java6Assertions.assertThat
+import org.junit.Test
+import java.util.Collections
+import java.util.LinkedList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicReference
+
+class ParallelOperatorsTest {
+
+    @Test
+    fun testParallelMap_keepOrder() {
+        val input = (0 until 1000).toList()
+        val result = parallelMap(input) {
+            Thread.sleep(1)
+            it * 2
+        }.get()
+
+        assertThat(result).isEqualTo(input.map { it * 2 })
+    }
+
+    @Test
+    fun testParallelMap_useMultipleThreads() {
+        val threads = Collections.synchronizedSet(HashSet<String>())
+        parallelMap((0 until 200).toList()) {
+            Thread.sleep(2)
+            threads.add(Thread.currentThread().name)
+        }.get()
+
+        assertThat(threads.size).isGreaterThan(1)
+    }
+
+    @Test
+    fun testParallelMap_emptyList() {
+        val result = parallelMap(emptyList<Int>()) { it * 2 }.get()
+        assertThat(result).isEmpty()
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun testParallelMap_error() {
+        parallelMap((0 until 500).toList()) {
+            Thread.sleep(1)
+            if (it == 300) throw IllegalStateException("Failed")
+            it
+        }.get()
+    }
+
+    @Test
+    fun testParallelFilter_operator() {
+        val got = AtomicReference<List<Int>>()
+        val doneSignal = CountDownLatch(1)
+        from {
+            LinkedList((0 until 1000).toList())
+        }.parallelFilter {
+            it % 3 == 0
+        }.parallelMap {
+            it + 1
+        }.onSuccess {
+            got.set(it)
+            doneSignal.countDown()
+        }.start()
+
+        doneSignal.await(2, TimeUnit.SECONDS)
+        flushMainThread()
+
+        assertThat(got.get()).isEqualTo((0 until 1000).filter { it % 3 == 0 }.map { it + 1 })
+    }
+
+    @Test
+    fun testChunkSize() {
+        // cheap items are not worth splitting for a small list
+        assertThat(chunkSize(10, 1000)).isEqualTo(1000)
+        // expensive items are split one per chunk, but never into more than the max chunks
+        assertThat(chunkSize(1_000_000, 8)).isEqualTo(1)
+        assertThat(chunkSize(1_000_000, 1_000_000)).isEqualTo((1_000_000 + THREAD_SIZE * 4 - 1) / (THREAD_SIZE * 4))
+    }
+}
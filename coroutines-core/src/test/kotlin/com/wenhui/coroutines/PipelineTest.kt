@@ -0,0 +1,135 @@
+package com.wenhui.coroutines
+
+import org.assertj.core.api.Java6Assertions.assertThat
+import org.junit.Test
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class PipelineTest {
+
+    @Test
+    fun testExecuteWithDifferentInputs() {
+        val results = CopyOnWriteArrayList<Int>()
+        val doneSignal = CountDownLatch(3)
+        val pipeline = pipeline<String>().transform {
+            it.length
+        }.transform {
+            it * 10
+        }.onSuccess {
+            results.add(it)
+            doneSignal.countDown()
+        }
+
+        pipeline.execute("a")
+        pipeline.execute("bb")
+        pipeline.execute("ccc")
+
+        assertThat(doneSignal.await(1, TimeUnit.SECONDS)).isTrue()
+        assertThat(results.sorted()).containsExactly(10, 20, 30)
+    }
+
+    @Test
+    fun testPipelineIsImmutable() {
+        val results = CopyOnWriteArrayList<String>()
+        val doneSignal = CountDownLatch(2)
+        val base = pipeline<Int>().transform { it + 1 }
+        base.transform { "plus one: $it" }.onSuccess {
+            results.add(it)
+            doneSignal.countDown()
+        }.execute(1)
+        base.transform { "also plus one: $it" }.onSuccess {
+            results.add(it)
+            doneSignal.countDown()
+        }.execute(1)
+
+        assertThat(doneSignal.await(1, TimeUnit.SECONDS)).isTrue()
+        assertThat(results.sorted()).containsExactly("also plus one: 2", "plus one: 2")
+    }
+
+    @Test
+    fun testFilterAndError() {
+        val results = CopyOnWriteArrayList<Int>()
+        val errors = CopyOnWriteArrayList<Throwable>()
+        val doneSignal = CountDownLatch(2)
+        val pipeline = pipeline<Int>().filter {
+            it > 0
+        }.transform {
+            if (it == 2) throw IllegalStateException("Failed")
+            it
+        }.onSuccess {
+            results.add(it)
+            doneSignal.countDown()
+        }.onError {
+            errors.add(it)
+            doneSignal.countDown()
+        }
+
+        pipeline.execute(-1)
+        pipeline.execute(1)
+        pipeline.execute(2)
+
+        assertThat(doneSignal.await(1, TimeUnit.SECONDS)).isTrue()
+        flushMainThread()
+        assertThat(results).containsExactly(1)
+        assertThat(errors).hasSize(1)
+    }
+
+    @Test
+    fun testStagesRunInTheirContext() {
+        val threads = CopyOnWriteArrayList<String>()
+        val doneSignal = CountDownLatch(1)
+        pipeline<Int>().transform {
+            threads.add(Thread.currentThread().name)
+            it
+        }.consume(CoroutineContexts.UI) {
+            threads.add(Thread.currentThread().name)
+        }.consume(CoroutineContexts.UI) {
+            threads.add(Thread.currentThread().name)
+        }.consume {
+            threads.add(Thread.currentThread().name)
+            doneSignal.countDown()
+        }.execute(1)
+
+        assertThat(doneSignal.await(1, TimeUnit.SECONDS)).isTrue()
+        assertThat(threads[0]).startsWith("CoroutinesAdapter-Background")
+        assertThat(threads[1]).isEqualTo("CoroutinesAdapter-Main")
+        assertThat(threads[2]).isEqualTo("CoroutinesAdapter-Main")
+        assertThat(threads[3]).startsWith("CoroutinesAdapter-Background")
+    }
+
+    @Test
+    fun testCancel() {
+        val ran = CountDownLatch(1)
+        val worker = pipeline<Int>().transform {
+            Thread.sleep(100)
+            it
+        }.consume {
+            ran.countDown()
+        }.execute(1)
+
+        Thread.sleep(20)
+        worker.cancel()
+
+        assertThat(ran.await(300, TimeUnit.MILLISECONDS)).isFalse()
+        assertThat(worker.isCompleted).isTrue()
+    }
+
+    @Test
+    fun testBindToProducer() {
+        val results = CopyOnWriteArrayList<Int>()
+        val doneSignal = CountDownLatch(4)
+        val producer = consumeByPool(pipeline<Int>().transform {
+            it * 2
+        }.onSuccess {
+            results.add(it)
+            doneSignal.countDown()
+        })
+
+        repeat(4) { producer.produce(it) }
+
+        assertThat(doneSignal.await(1, TimeUnit.SECONDS)).isTrue()
+        assertThat(results.sorted()).containsExactly(0, 2, 4, 6)
+        producer.close()
+    }
+}
@@ -0,0 +1,57 @@
+package com.wenhui.coroutines
+
+import org.reactivestreams.Publisher
+import org.reactivestreams.Subscriber
+import org.reactivestreams.Subscription
+import org.reactivestreams.tck.PublisherVerification
+import org.reactivestreams.tck.TestEnvironment
+
+/**
+ * The Reactive Streams TCK for [toPublisher], it runs with TestNG in the tckTest task
+ */
+class ProducerPublisherTckTest : PublisherVerification<Int>(TestEnvironment(TIMEOUT_MILLIS)) {
+
+    /**
+     * The elements are produced as the consumer takes them, so a publisher of [Long.MAX_VALUE] elements only keeps
+     * a few of them at a time
+     */
+    override fun createPublisher(elements: Long): Publisher<Int> {
+        val publisher = toPublisher(consumeBy<Int, Int> { it })
+        val drainable = publisher as DrainableProducer<*>
+        var produced = 0L
+        val produceNext: () -> Unit = {
+            synchronized(publisher) {
+                if (produced < elements) {
+                    publisher.produce(produced++.toInt())
+                    if (produced == elements) drainable.closeWhenDrained()
+                }
+            }
+        }
+        drainable.dequeueListener = produceNext
+        if (elements == 0L) drainable.closeWhenDrained()
+        repeat(WINDOW) { produceNext() }
+        return publisher
+    }
+
+    /**
+     * A publisher only serves one subscriber, so it rejects any other with an error
+     */
+    override fun createFailedPublisher(): Publisher<Int> {
+        val publisher = toPublisher(consumeBy<Int, Int> { it })
+        publisher.subscribe(object : Subscriber<Int> {
+            override fun onSubscribe(subscription: Subscription) {}
+
+            override fun onNext(element: Int) {}
+
+            override fun onError(exception: Throwable) {}
+
+            override fun onComplete() {}
+        })
+        return publisher
+    }
+
+    private companion object {
+        const val TIMEOUT_MILLIS = 500L
+        const val WINDOW = 16
+    }
+}
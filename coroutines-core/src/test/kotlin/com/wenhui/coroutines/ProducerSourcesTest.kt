@@ -0,0 +1,151 @@
+package com.wenhui.coroutines
+
+import org.assertj.core.api.Java6Assertions.assertThat
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.InputStream
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicInteger
+
+class ProducerSourcesTest {
+
+    @Test
+    fun testIterator_pulledAsConsumed() {
+        val pulled = AtomicInteger()
+        val consumed = AtomicInteger()
+        val maxAhead = AtomicInteger()
+        val source = generateSequence(0) { it + 1 }.take(2000).onEach { pulled.incrementAndGet() }
+
+        val worker = from(source, consumeByPool<Int, Unit> {
+            val count = consumed.incrementAndGet()
+            maxAhead.accumulateAndGet(pulled.get() - count, Math::max)
+        })
+
+        awaitCompleted(worker)
+        assertThat(consumed.get()).isEqualTo(2000)
+        // never more than the prefetch waiting, plus the ones being consumed
+        assertThat(maxAhead.get()).isLessThanOrEqualTo(THREAD_SIZE * 3 + 1)
+    }
+
+    @Test
+    fun testIterator_consumeByTakesEveryElement() {
+        val consumed = CopyOnWriteArrayList<Int>()
+
+        val worker = from((0 until 100).iterator(), consumeBy<Int, Unit> { consumed.add(it) })
+
+        awaitCompleted(worker)
+        assertThat(consumed).isEqualTo((0 until 100).toList())
+    }
+
+    @Test
+    fun testInputStream_lines() {
+        val closed = AtomicInteger()
+        val input = object : InputStream() {
+            private val bytes = ByteArrayInputStream("first\nsecond\r\nthird".toByteArray())
+
+            override fun read() = bytes.read()
+
+            override fun close() {
+                closed.incrementAndGet()
+            }
+        }
+        val lines = CopyOnWriteArrayList<String>()
+
+        val worker = from(input, consumeBy<String, Unit> { lines.add(it) })
+
+        awaitCompleted(worker)
+        assertThat(lines).containsExactly("first", "second", "third")
+        assertThat(closed.get()).isEqualTo(1)
+    }
+
+    @Test
+    fun testPath_lines() {
+        val file = Files.createTempFile("lines", ".txt")
+        try {
+            Files.write(file, (0 until 1000).map { "line $it" })
+            val lines = CopyOnWriteArrayList<String>()
+
+            val worker = from(file, consumeByPool<String, Unit> { lines.add(it) })
+
+            awaitCompleted(worker)
+            assertThat(lines.sortedBy { it.substring(5).toInt() }).isEqualTo((0 until 1000).map { "line $it" })
+        } finally {
+            Files.delete(file)
+        }
+    }
+
+    @Test
+    fun testMappedFile_recordAlignedRegions() {
+        val file = Files.createTempFile("records", ".csv")
+        try {
+            // one record is longer than a region
+            val records = (0 until 500).map { "$it," + "x".repeat(it % 7) } + "long," + "y".repeat(200)
+            Files.write(file, records.joinToString("\n").toByteArray())
+            val regions = CopyOnWriteArrayList<String>()
+
+            val worker = fromMappedFile(file, consumeByPool<ByteBuffer, Unit> { region ->
+                assertThat(region.isReadOnly).isTrue()
+                val bytes = ByteArray(region.remaining())
+                region.get(bytes)
+                regions.add(String(bytes))
+            }, 64)
+
+            awaitCompleted(worker)
+            assertThat(regions.size).isGreaterThan(1)
+            assertThat(regions.count { !it.endsWith("\n") }).isEqualTo(1)
+            assertThat(regions.flatMap { it.lines().filter { it.isNotEmpty() } }.sorted()).isEqualTo(records.sorted())
+        } finally {
+            Files.delete(file)
+        }
+    }
+
+    @Test
+    fun testMappedFile_customDelimiter() {
+        val file = Files.createTempFile("records", ".bin")
+        try {
+            Files.write(file, "a|bb|ccc|".toByteArray())
+            val regions = CopyOnWriteArrayList<Int>()
+
+            val worker = fromMappedFile(file, consumeBy<ByteBuffer, Unit> { regions.add(it.remaining()) }, 4,
+                    '|'.toByte())
+
+            awaitCompleted(worker)
+            // "a|bb" has no delimiter at the end, so the first region stops after "a|"
+            assertThat(regions).containsExactly(2, 3, 4)
+        } finally {
+            Files.delete(file)
+        }
+    }
+
+    @Test
+    fun testCancel_stopsPulling() {
+        val pulled = AtomicInteger()
+        val source = generateSequence(0) { it + 1 }.onEach { pulled.incrementAndGet() }
+
+        val worker = from(source, consumeByPool<Int, Unit> { Thread.sleep(10) })
+        Thread.sleep(50)
+        worker.cancel()
+
+        awaitCompleted(worker)
+        val count = pulled.get()
+        Thread.sleep(50)
+        assertThat(pulled.get()).isEqualTo(count)
+    }
+
+    @Test
+    fun testFailingSource_completesWorker() {
+        val source = generateSequence(0) { if (it == 3) throw IllegalStateException("Failed") else it + 1 }
+
+        val worker = from(source, consumeBy<Int, Unit> {})
+
+        awaitCompleted(worker)
+    }
+
+    private fun awaitCompleted(worker: Worker) {
+        val deadline = System.currentTimeMillis() + 5000
+        while (!worker.isCompleted && System.currentTimeMillis() < deadline) Thread.sleep(5)
+        assertThat(worker.isCompleted).isTrue()
+    }
+}
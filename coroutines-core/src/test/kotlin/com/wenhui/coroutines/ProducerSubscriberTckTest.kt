@@ -0,0 +1,19 @@
+package com.wenhui.coroutines
+
+import org.reactivestreams.Subscriber
+import org.reactivestreams.tck.SubscriberBlackboxVerification
+import org.reactivestreams.tck.TestEnvironment
+
+/**
+ * The Reactive Streams TCK for [toSubscriber], it runs with TestNG in the tckTest task
+ */
+class ProducerSubscriberTckTest : SubscriberBlackboxVerification<Int>(TestEnvironment(TIMEOUT_MILLIS)) {
+
+    override fun createSubscriber(): Subscriber<Int> = toSubscriber(consumeBy<Int, Unit> { }.start(), 4)
+
+    override fun createElement(element: Int) = element
+
+    private companion object {
+        const val TIMEOUT_MILLIS = 500L
+    }
+}
@@ -0,0 +1,59 @@
+package com.wenhui.coroutines
+
+import org.assertj.core.api.Java6Assertions.assertThat
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class RateLimiterTest {
+
+    @Test
+    fun testThrottleWorks() {
+        val rateLimiter = RateLimiter("test", 20.0)
+        val doneSignal = CountDownLatch(5)
+
+        val startTime = System.nanoTime()
+        repeat(5) {
+            from { doneSignal.countDown() }.setRateLimiter(rateLimiter).start()
+        }
+        assertThat(doneSignal.await(2, TimeUnit.SECONDS)).isTrue()
+        val elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)
+
+        // The first work takes the only token of the burst, the others wait 50ms each
+        assertThat(elapsedMillis).isGreaterThanOrEqualTo(180)
+        val stats = rateLimiter.stats()
+        assertThat(stats.acquiredCount).isEqualTo(5)
+        assertThat(stats.throttledCount).isEqualTo(4)
+        assertThat(stats.maxWaitNanos).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(150))
+    }
+
+    @Test
+    fun testBurst() {
+        val rateLimiter = RateLimiter("test", 1.0, 3)
+        val doneSignal = CountDownLatch(3)
+
+        repeat(3) {
+            from { doneSignal.countDown() }.setRateLimiter(rateLimiter).start()
+        }
+
+        assertThat(doneSignal.await(500, TimeUnit.MILLISECONDS)).isTrue()
+        assertThat(rateLimiter.stats().throttledCount).isEqualTo(0)
+    }
+
+    @Test
+    fun testThrottleProducer() {
+        val rateLimiter = RateLimiter("test", 20.0)
+        val doneSignal = CountDownLatch(3)
+
+        val producer = consumeByPool<Int, Int> {
+            doneSignal.countDown()
+            it
+        }.setRateLimiter(rateLimiter).start()
+        repeat(3) { producer.produce(it) }
+
+        assertThat(doneSignal.await(2, TimeUnit.SECONDS)).isTrue()
+        assertThat(rateLimiter.stats().acquiredCount).isEqualTo(3)
+        assertThat(rateLimiter.stats().throttledCount).isEqualTo(2)
+        producer.close()
+    }
+}
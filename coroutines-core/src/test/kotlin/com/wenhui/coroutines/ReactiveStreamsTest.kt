@@ -0,0 +1,204 @@
+package com.wenhui.coroutines
+
+import org.assertj.core.api.Java6Assertions.assertThat
+import org.junit.Test
+import org.reactivestreams.Publisher
+import org.reactivestreams.Subscriber
+import org.reactivestreams.Subscription
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+class ReactiveStreamsTest {
+
+    @Test
+    fun testPublisher_requestDrivesConsumption() {
+        val publisher = toPublisher(consumeBy<Int, Int> { it * 2 })
+        val subscriber = TestSubscriber<Int>()
+        publisher.subscribe(subscriber)
+        repeat(5) { publisher.produce(it) }
+
+        subscriber.request(2)
+        subscriber.awaitNext(2)
+        Thread.sleep(50)
+        assertThat(subscriber.elements).containsExactly(0, 2)
+        // the other elements wait in the producer until requested
+        assertThat(publisher.metrics().backlog).isEqualTo(3)
+
+        subscriber.request(3)
+        subscriber.awaitNext(5)
+        assertThat(subscriber.elements).containsExactly(0, 2, 4, 6, 8)
+        publisher.close()
+    }
+
+    @Test
+    fun testPublisher_filteredElementDoesNotUseDemand() {
+        val publisher = toPublisher(consumeByPool<Int, Int> { it }.filter { it % 2 == 0 })
+        val subscriber = TestSubscriber<Int>()
+        publisher.subscribe(subscriber)
+        repeat(6) { publisher.produce(it) }
+
+        subscriber.request(3)
+        subscriber.awaitNext(3)
+
+        assertThat(subscriber.elements.sorted()).containsExactly(0, 2, 4)
+        publisher.close()
+    }
+
+    @Test
+    fun testPublisher_completeOnClose() {
+        val publisher = toPublisher(consumeBy<Int, Int> { it })
+        val subscriber = TestSubscriber<Int>()
+        publisher.subscribe(subscriber)
+
+        publisher.close()
+
+        assertThat(subscriber.terminated.await(1, TimeUnit.SECONDS)).isTrue()
+        assertThat(subscriber.completed).isTrue()
+        assertThat(subscriber.error).isNull()
+    }
+
+    @Test
+    fun testPublisher_errorClosesProducer() {
+        val publisher = toPublisher(consumeBy<Int, Int> { throw IllegalStateException("Failed $it") })
+        val subscriber = TestSubscriber<Int>()
+        publisher.subscribe(subscriber)
+        subscriber.request(1)
+        publisher.produce(1)
+
+        assertThat(subscriber.terminated.await(1, TimeUnit.SECONDS)).isTrue()
+        assertThat(subscriber.error).isInstanceOf(IllegalStateException::class.java)
+        assertThat(subscriber.completed).isFalse()
+        assertThat(publisher.isActive).isFalse()
+    }
+
+    @Test
+    fun testPublisher_invalidRequest() {
+        val publisher = toPublisher(consumeBy<Int, Int> { it })
+        val subscriber = TestSubscriber<Int>()
+        publisher.subscribe(subscriber)
+
+        subscriber.request(0)
+
+        assertThat(subscriber.error).isInstanceOf(IllegalArgumentException::class.java)
+        assertThat(publisher.isActive).isFalse()
+    }
+
+    @Test
+    fun testPublisher_onlyOneSubscriber() {
+        val publisher = toPublisher(consumeBy<Int, Int> { it })
+        publisher.subscribe(TestSubscriber())
+        val second = TestSubscriber<Int>()
+
+        publisher.subscribe(second)
+
+        assertThat(second.error).isInstanceOf(IllegalStateException::class.java)
+        assertThat(publisher.isActive).isTrue()
+        publisher.close()
+    }
+
+    @Test
+    fun testSubscriber_requestsAsConsumed() {
+        val consumed = CopyOnWriteArrayList<Int>()
+        val producer = consumeByPool<Int, Unit> { consumed.add(it) }.start()
+        val publisher = RangePublisher(100)
+
+        publisher.subscribe(toSubscriber(producer, 8))
+
+        publisher.await()
+        val deadline = System.currentTimeMillis() + 2000
+        while (consumed.size < 100 && System.currentTimeMillis() < deadline) Thread.sleep(5)
+        // never more than the prefetch waiting in the producer
+        assertThat(publisher.maxOutstanding).isLessThanOrEqualTo(8)
+        assertThat(consumed.sorted()).isEqualTo((0 until 100).toList())
+        producer.close()
+    }
+
+    @Test
+    fun testSubscriber_completeDrainsProducer() {
+        val consumed = CopyOnWriteArrayList<Int>()
+        val producer = consumeByPool<Int, Unit> {
+            Thread.sleep(5)
+            consumed.add(it)
+        }.start() as DrainableProducer<Int>
+        val publisher = RangePublisher(10)
+        val closed = CountDownLatch(1)
+        producer.invokeOnClose { closed.countDown() }
+
+        publisher.subscribe(toSubscriber(producer, 10))
+
+        assertThat(closed.await(2, TimeUnit.SECONDS)).isTrue()
+        assertThat(producer.isActive).isFalse()
+        // the elements produced before the completion are all consumed
+        assertThat(consumed.sorted()).isEqualTo((0 until 10).toList())
+    }
+
+    private class TestSubscriber<T> : Subscriber<T> {
+        val elements = CopyOnWriteArrayList<T>()
+        val terminated = CountDownLatch(1)
+        @Volatile var error: Throwable? = null
+        @Volatile var completed = false
+        private var subscription: Subscription? = null
+
+        fun request(n: Long) = subscription!!.request(n)
+
+        fun awaitNext(count: Int) {
+            val deadline = System.currentTimeMillis() + 2000
+            while (elements.size < count && System.currentTimeMillis() < deadline) Thread.sleep(5)
+            assertThat(elements.size).isEqualTo(count)
+        }
+
+        override fun onSubscribe(subscription: Subscription) {
+            this.subscription = subscription
+        }
+
+        override fun onNext(element: T) {
+            elements.add(element)
+        }
+
+        override fun onError(exception: Throwable) {
+            error = exception
+            terminated.countDown()
+        }
+
+        override fun onComplete() {
+            completed = true
+            terminated.countDown()
+        }
+    }
+
+    /**
+     * Publish 0 until [count] as requested, then complete
+     */
+    private class RangePublisher(private val count: Int) : Publisher<Int> {
+        private val requested = AtomicLong()
+        private val done = CountDownLatch(1)
+        @Volatile var maxOutstanding = 0L
+
+        fun await() = assertThat(done.await(5, TimeUnit.SECONDS)).isTrue()
+
+        override fun subscribe(subscriber: Subscriber<in Int>) {
+            var next = 0
+            subscriber.onSubscribe(object : Subscription {
+                override fun request(n: Long) {
+                    maxOutstanding = Math.max(maxOutstanding, requested.addAndGet(n))
+                }
+
+                override fun cancel() {}
+            })
+            Thread {
+                while (next < count) {
+                    if (requested.get() > 0) {
+                        requested.decrementAndGet()
+                        subscriber.onNext(next++)
+                    } else {
+                        Thread.sleep(1)
+                    }
+                }
+                subscriber.onComplete()
+                done.countDown()
+            }.start()
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.wenhui.coroutines
+
+import kotlinx.coroutines.experimental.delay
+import kotlinx.coroutines.experimental.launch
+import kotlinx.coroutines.experimental.runBlocking
+import org.assertj.core.api.Java6Assertions.assertThat
+import org.junit.Test
+import java.lang.management.ManagementFactory
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadPoolExecutor
+import javax.management.ObjectName
+
+class StatsTest {
+
+    @Test
+    fun testStripedCounter() {
+        val counter = StripedCounter()
+        val threads = (1..4).map {
+            Thread { repeat(1000) { counter.increment() } }.apply { start() }
+        }
+        threads.forEach { it.join() }
+        counter.add(10)
+
+        assertThat(counter.sum()).isEqualTo(4010)
+    }
+
+    @Test
+    fun testInstrumentedDispatcher() {
+        val executor = Executors.newScheduledThreadPool(2) as ThreadPoolExecutor
+        val metrics = DispatcherMetrics("test", executor)
+        val dispatcher = InstrumentedDispatcher(executor, metrics)
+
+        runBlocking {
+            (1..10).map {
+                launch(dispatcher) {
+                    delay(10) // resumed through the dispatcher, so counted as another task
+                    Thread.sleep(10)
+                }
+            }.forEach { it.join() }
+        }
+        // A job completes inside its task, give the last tasks a moment to record their run time
+        val deadline = System.currentTimeMillis() + 1000
+        while (metrics.snapshot().completedTasks < 20 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1)
+        }
+
+        val stats = metrics.snapshot()
+        assertThat(stats.submittedTasks).isEqualTo(20)
+        assertThat(stats.completedTasks).isEqualTo(20)
+        assertThat(stats.activeTasks).isEqualTo(0)
+        assertThat(stats.queuedTasks).isEqualTo(0)
+        assertThat(stats.rejectedTasks).isEqualTo(0)
+        assertThat(stats.totalRunTimeNanos).isGreaterThanOrEqualTo(10 * 10_000_000L)
+        assertThat(stats.maxQueueTimeNanos).isGreaterThan(0)
+        assertThat(stats.poolSize).isEqualTo(2)
+        executor.shutdown()
+    }
+
+    @Test
+    fun testAverageQueueTimeWhileRunning() {
+        val metrics = DispatcherMetrics("test", Executors.newSingleThreadExecutor().also { it.shutdown() })
+        repeat(2) { metrics.onSubmit() }
+        metrics.onStart(100)
+        metrics.onStart(300)
+
+        // both tasks are still running
+        assertThat(metrics.snapshot().averageQueueTimeNanos).isEqualTo(200)
+
+        metrics.onComplete(10)
+        val stats = metrics.snapshot()
+        assertThat(stats.startedTasks).isEqualTo(2)
+        assertThat(stats.averageQueueTimeNanos).isEqualTo(200)
+    }
+
+    @Test
+    fun testRegisterStatsMBean() {
+        val executor = Executors.newSingleThreadExecutor()
+        val metrics = DispatcherMetrics("mbean-test", executor)
+
+        assertThat(registerStatsMBean("mbean-test", metrics)).isEqualTo(true)
+
+        metrics.onSubmit()
+        val name = ObjectName("com.wenhui.coroutines:type=Dispatcher,name=mbean-test")
+        assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "SubmittedTasks")).isEqualTo(1L)
+        executor.shutdown()
+    }
+
+    @Test
+    fun testStats() {
+        assertThat(stats().name).isEqualTo("background")
+    }
+}
@@ -0,0 +1,10 @@
+package com.wenhui.coroutines
+
+import kotlinx.coroutines.experimental.runBlocking
+
+/**
+ * Wait for everything posted to [CoroutineContexts.UI] so far to run
+ */
+internal fun flushMainThread() {
+    runBlocking(CONTEXT_UI) {}
+}
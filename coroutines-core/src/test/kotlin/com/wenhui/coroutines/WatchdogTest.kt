@@ -0,0 +1,84 @@
+package com.wenhui.coroutines
+
+import org.assertj.core.api.Java6Assertions.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
+
+class WatchdogTest {
+
+    private val longRunningWorks = CopyOnWriteArrayList<ActiveWorkInfo>()
+
+    @Before
+    fun setup() {
+        resetConfiguration()
+        configCoroutinesAdapter(Configuration.Builder()
+                .executor(newDefaultExecutorService())
+                .watchdog(100, object : WatchdogListener {
+                    override fun onLongRunningWork(work: ActiveWorkInfo) {
+                        longRunningWorks.add(work)
+                    }
+                })
+                .build())
+    }
+
+    @After
+    fun tearDown() {
+        resetConfiguration()
+    }
+
+    @Test
+    fun testLongRunningWork() {
+        val release = CountDownLatch(1)
+        val worker = from {
+            1000
+        }.transform {
+            release.await(2, TimeUnit.SECONDS)
+            it + 1
+        }.setName("slow").start()
+
+        Thread.sleep(400)
+        release.countDown()
+
+        assertThat(longRunningWorks).hasSize(1)
+        val work = longRunningWorks[0]
+        assertThat(work.name).isEqualTo("slow")
+        assertThat(work.stage).isEqualTo(1)
+        assertThat(work.ageMillis).isGreaterThanOrEqualTo(100)
+        assertThat(work.threadName).startsWith("CoroutinesAdapter-Background")
+        assertThat(work.stackTrace.isEmpty()).isFalse()
+
+        worker.cancel()
+    }
+
+    @Test
+    fun testDumpActiveWorks() {
+        val workManager = WorkManager()
+        val started = CountDownLatch(2)
+        val release = CountDownLatch(1)
+        from {
+            started.countDown()
+            release.await(2, TimeUnit.SECONDS)
+        }.setName("managed").start().manageBy(workManager)
+        from {
+            started.countDown()
+            release.await(2, TimeUnit.SECONDS)
+        }.setName("unmanaged").start()
+
+        assertThat(started.await(1, TimeUnit.SECONDS)).isTrue()
+        val managed = workManager.dumpActiveWorks()
+        val all = dumpActiveWorks()
+        release.countDown()
+
+        assertThat(managed).hasSize(1)
+        assertThat(managed[0].name).isEqualTo("managed")
+        assertThat(managed[0].stage).isEqualTo(0)
+        assertThat(all.map { it.name }).contains("managed", "unmanaged")
+
+        Thread.sleep(100)
+        assertThat(dumpActiveWorks()).isEmpty()
+    }
+}
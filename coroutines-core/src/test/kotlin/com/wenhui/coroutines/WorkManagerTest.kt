@@ -0,0 +1,144 @@
+package com.wenhui.coroutines
+
+import kotlinx.coroutines.experimental.Job
+import org.assertj.core.api.Java6Assertions.assertThat
+
+import org.junit.Before
+import org.junit.Test
+
+
+class WorkManagerTest {
+
+    private lateinit var workManager: WorkManager
+
+    @Before
+    fun setup() {
+        workManager = WorkManager()
+    }
+
+    @Test
+    fun testHaveActiveWorks_empty() {
+        assertThat(workManager.hasActiveWork()).isEqualTo(false)
+    }
+
+    @Test
+    fun testHaveActiveWorks_1() {
+        addJobToManager()
+
+        assertThat(workManager.hasActiveWork()).isEqualTo(true)
+    }
+
+    @Test
+    fun testHaveActiveWorks_many() {
+        addJobToManager()
+        addJobToManager()
+        assertThat(workManager.hasActiveWork()).isEqualTo(true)
+    }
+
+    @Test
+    fun testCancelAllWorks() {
+        addJobToManager()
+        addJobToManager()
+        addJobToManager()
+
+        assertThat(workManager.hasActiveWork()).isEqualTo(true)
+        workManager.cancelAllWorks()
+
+        assertThat(workManager.hasActiveWork()).isEqualTo(false)
+    }
+
+    @Test
+    fun testCompletedWorkIsRemoved() {
+        val job = Job()
+        workManager.manageJob(job)
+        job.cancel()
+
+        assertThat(workManager.hasActiveWork()).isEqualTo(false)
+    }
+
+    @Test
+    fun testManageAfterCancelAllWorks() {
+        addJobToManager()
+        workManager.cancelAllWorks()
+
+        val job = Job()
+        workManager.manageJob(job)
+        assertThat(job.isActive).isEqualTo(true)
+        assertThat(workManager.hasActiveWork()).isEqualTo(true)
+
+        workManager.cancelAllWorks()
+        assertThat(job.isCancelled).isEqualTo(true)
+    }
+
+    @Test
+    fun testCancelByTag() {
+        val row1 = Job()
+        val row2 = Job()
+        val untagged = Job()
+        workManager.manageJob(row1, "row-1")
+        workManager.manageJob(row2, "row-2")
+        workManager.manageJob(untagged)
+
+        assertThat(workManager.hasActiveWork("row-1")).isEqualTo(true)
+        workManager.cancelByTag("row-1")
+
+        assertThat(row1.isCancelled).isEqualTo(true)
+        assertThat(row2.isActive).isEqualTo(true)
+        assertThat(untagged.isActive).isEqualTo(true)
+        assertThat(workManager.hasActiveWork("row-1")).isEqualTo(false)
+        assertThat(workManager.hasActiveWork("row-2")).isEqualTo(true)
+        assertThat(workManager.hasActiveWork()).isEqualTo(true)
+    }
+
+    @Test
+    fun testCancelAllWorks_tagged() {
+        val job = Job()
+        workManager.manageJob(job, "row-1")
+
+        workManager.cancelAllWorks()
+
+        assertThat(job.isCancelled).isEqualTo(true)
+        assertThat(workManager.hasActiveWork("row-1")).isEqualTo(false)
+    }
+
+    @Test
+    fun testTagReusedAfterCompleted() {
+        val first = Job()
+        workManager.manageJob(first, "row-1")
+        first.cancel()
+        assertThat(workManager.hasActiveWork("row-1")).isEqualTo(false)
+
+        val second = Job()
+        workManager.manageJob(second, "row-1")
+        assertThat(workManager.hasActiveWork("row-1")).isEqualTo(true)
+
+        workManager.cancelByTag("row-1")
+        assertThat(second.isCancelled).isEqualTo(true)
+    }
+
+    @Test
+    fun testChildManager() {
+        val child = WorkManager(workManager)
+        val childJob = Job()
+        val parentJob = Job()
+        child.manageJob(childJob)
+        workManager.manageJob(parentJob)
+
+        assertThat(workManager.hasActiveWork()).isEqualTo(true)
+        child.cancelAllWorks()
+        assertThat(childJob.isCancelled).isEqualTo(true)
+        assertThat(parentJob.isActive).isEqualTo(true)
+
+        val anotherChildJob = Job()
+        child.manageJob(anotherChildJob)
+        workManager.cancelAllWorks()
+        assertThat(anotherChildJob.isCancelled).isEqualTo(true)
+        assertThat(parentJob.isCancelled).isEqualTo(true)
+        assertThat(child.hasActiveWork()).isEqualTo(false)
+    }
+
+    private fun addJobToManager() {
+        val job = Job()
+        workManager.manageJob(job)
+    }
+}
\ No newline at end of file
@@ -0,0 +1,81 @@
+package com.wenhui.coroutines
+
+import org.assertj.core.api.Java6Assertions.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.util.concurrent.CopyOnWriteArrayList
+
+class WorkTracerTest {
+
+    private val events = CopyOnWriteArrayList<String>()
+
+    @Before
+    fun setup() {
+        resetConfiguration()
+        configCoroutinesAdapter(Configuration.Builder()
+                .executor(newDefaultExecutorService())
+                .tracer(object : WorkTracer {
+                    override fun onEvent(workId: Long, workName: String?, event: TraceEvent, stage: Int, timeNanos: Long) {
+                        events.add(if (stage == NO_STAGE) "$workName $event" else "$workName $event $stage")
+                    }
+                })
+                .build())
+    }
+
+    @After
+    fun tearDown() {
+        resetConfiguration()
+    }
+
+    @Test
+    fun testTraceSuccess() {
+        from {
+            1000
+        }.transform {
+            it + 1
+        }.consume(CoroutineContexts.UI) {
+        }.onSuccess {
+        }.setName("work").start()
+
+        Thread.sleep(200)
+        flushMainThread()
+        Thread.sleep(100)
+        flushMainThread()
+
+        assertThat(events).containsExactly(
+                "work START",
+                "work START_DELAY_END",
+                "work STAGE_ENQUEUE 1",
+                "work STAGE_BEGIN 1",
+                "work STAGE_END 1",
+                "work STAGE_ENQUEUE 2",
+                "work STAGE_BEGIN 2",
+                "work STAGE_END 2",
+                "work SUCCESS",
+                "work CALLBACK_ENQUEUE",
+                "work CALLBACK_RUN")
+    }
+
+    @Test
+    fun testTraceError() {
+        from {
+            throw IllegalStateException("Failed")
+        }.start()
+
+        Thread.sleep(200)
+
+        assertThat(events).containsExactly("null START", "null START_DELAY_END", "null ERROR")
+    }
+
+    @Test
+    fun testTraceCancel() {
+        from {
+            1000
+        }.setStartDelay(500).start().cancel()
+
+        Thread.sleep(100)
+
+        assertThat(events).containsExactly("null START", "null CANCEL")
+    }
+}
@@ -1,15 +1,17 @@
 package com.wenhui.coroutines.example;
 
-import com.wenhui.coroutines.BaseAction;
+import com.wenhui.coroutines.AsyncAction;
+import com.wenhui.coroutines.AsyncCallback;
 import okhttp3.Headers;
 import okhttp3.ResponseBody;
 import retrofit2.Call;
+import retrofit2.Callback;
 import retrofit2.Response;
 
 /**
- * Create custom background work
+ * Create custom background work, the request is enqueued so no background thread waits for the response
  */
-public class RetrofitWork<T> extends BaseAction<T> {
+public class RetrofitWork<T> extends AsyncAction<T> {
 
     private Call<T> call;
 
@@ -18,16 +20,30 @@ public class RetrofitWork<T> extends BaseAction<T> {
     }
 
     @Override
-    public T run() throws Exception {
-        final Response<T> response = call.execute();
-        if (response.isSuccessful()) {
-            return response.body();
-        }
+    public void start(final AsyncCallback<T> callback) {
+        call.enqueue(new Callback<T>() {
+            @Override
+            public void onResponse(Call<T> call, Response<T> response) {
+                if (response.isSuccessful()) {
+                    callback.onSuccess(response.body());
+                } else {
+                    callback.onError(new RetrofitError(response.code(),
+                            response.message(),
+                            response.headers(),
+                            response.errorBody()));
+                }
+            }
+
+            @Override
+            public void onFailure(Call<T> call, Throwable t) {
+                callback.onError(t);
+            }
+        });
+    }
 
-        throw new RetrofitError(response.code(),
-                response.message(),
-                response.headers(),
-                response.errorBody());
+    @Override
+    public void onCancel() {
+        call.cancel();
     }
 
     public static class RetrofitError extends Exception {